@@ -2,8 +2,10 @@ package com.ai.travel;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AiTravelPlannerApplication {
     public static void main(String[] args) {
         SpringApplication.run(AiTravelPlannerApplication.class, args);
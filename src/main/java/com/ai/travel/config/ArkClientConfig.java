@@ -0,0 +1,117 @@
+package com.ai.travel.config;
+
+import com.volcengine.ark.runtime.service.ArkService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 豆包(Ark)客户端配置
+ * 整个应用共享一个ArkService实例，复用连接池与调度线程，随Spring容器关闭
+ */
+@Configuration
+public class ArkClientConfig {
+
+    @Value("${doubao.api-key}")
+    private String apiKey;
+
+    @Value("${doubao.base-url}")
+    private String baseUrl;
+
+    @Value("${doubao.client.max-idle-connections:20}")
+    private int maxIdleConnections;
+
+    @Value("${doubao.client.keep-alive:5m}")
+    private Duration keepAlive;
+
+    @Value("${doubao.client.max-requests:64}")
+    private int maxRequests;
+
+    @Value("${doubao.client.max-requests-per-host:64}")
+    private int maxRequestsPerHost;
+
+    @Value("${doubao.client.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    // 默认与调用截止时间一致，截止时间之后HTTP请求不应继续占用连接；流式读取被取消后停滞的连接也由它结束
+    @Value("${doubao.client.timeout:${doubao.resilience.deadline:60s}}")
+    private Duration timeout;
+
+    /**
+     * 连接池：空闲连接超过keep-alive时长后由OkHttp后台清理
+     */
+    @Bean(destroyMethod = "evictAll")
+    public ConnectionPool arkConnectionPool(MeterRegistry meterRegistry) {
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("doubao.client.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Ark连接池中的连接总数")
+                .register(meterRegistry);
+        Gauge.builder("doubao.client.pool.idle", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Ark连接池中的空闲连接数")
+                .register(meterRegistry);
+        return connectionPool;
+    }
+
+    /**
+     * 调度器：限制同时发往豆包的请求数，超出部分在调度器内排队
+     */
+    @Bean
+    public Dispatcher arkDispatcher(MeterRegistry meterRegistry) {
+        Dispatcher dispatcher = new Dispatcher(createDispatcherExecutor());
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        Gauge.builder("doubao.client.dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("正在执行的Ark请求数")
+                .register(meterRegistry);
+        Gauge.builder("doubao.client.dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("在调度器中排队的Ark请求数")
+                .register(meterRegistry);
+        Gauge.builder("doubao.client.dispatcher.max-requests", dispatcher, Dispatcher::getMaxRequests)
+                .description("调度器允许的最大并发请求数")
+                .register(meterRegistry);
+        return dispatcher;
+    }
+
+    /**
+     * 单例ArkService，容器关闭时停止调度线程
+     */
+    @Bean(destroyMethod = "shutdownExecutor")
+    public ArkService arkService(ConnectionPool arkConnectionPool, Dispatcher arkDispatcher) {
+        return ArkService.builder()
+                .apiKey(apiKey)
+                .baseUrl(baseUrl)
+                .connectionPool(arkConnectionPool)
+                .dispatcher(arkDispatcher)
+                .connectTimeout(connectTimeout)
+                .timeout(timeout)
+                .build();
+    }
+
+    /**
+     * 与OkHttp默认调度线程池一致，但线程命名便于排查
+     */
+    private ExecutorService createDispatcherExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "ark-dispatcher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory);
+    }
+}
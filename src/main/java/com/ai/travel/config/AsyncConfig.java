@@ -0,0 +1,122 @@
+package com.ai.travel.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 异步任务线程池配置
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Value("${plan.stream.pool-size:16}")
+    private int streamPoolSize;
+
+    @Value("${plan.stream.queue-capacity:32}")
+    private int streamQueueCapacity;
+
+    @Value("${plan.job.pool-size:8}")
+    private int jobPoolSize;
+
+    @Value("${plan.job.queue-capacity:200}")
+    private int jobQueueCapacity;
+
+    @Value("${plan.fan-out.pool-size:32}")
+    private int dayPoolSize;
+
+    @Value("${plan.fan-out.queue-capacity:64}")
+    private int dayQueueCapacity;
+
+    @Value("${plan.batch.pool-size:16}")
+    private int batchPoolSize;
+
+    @Value("${plan.batch.queue-capacity:32}")
+    private int batchQueueCapacity;
+
+    @Value("${doubao.resilience.pool-size:64}")
+    private int callPoolSize;
+
+    /**
+     * 流式生成旅行计划使用的线程池，避免占用Tomcat请求线程
+     */
+    @Bean
+    public ThreadPoolTaskExecutor planStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamPoolSize);
+        executor.setMaxPoolSize(streamPoolSize);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("plan-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 异步生成任务使用的线程池，大小决定同时调用大模型的任务数
+     */
+    @Bean
+    public ThreadPoolTaskExecutor planJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobPoolSize);
+        executor.setMaxPoolSize(jobPoolSize);
+        executor.setQueueCapacity(jobQueueCapacity);
+        executor.setThreadNamePrefix("plan-job-");
+        return executor;
+    }
+
+    /**
+     * 长行程按天并发生成使用的线程池，单个计划的并发由plan.fan-out.parallelism控制；队列有界，已满时拒绝
+     */
+    @Bean
+    public ThreadPoolTaskExecutor planDayExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(dayPoolSize);
+        executor.setMaxPoolSize(dayPoolSize);
+        executor.setQueueCapacity(dayQueueCapacity);
+        executor.setThreadNamePrefix("plan-day-");
+        return executor;
+    }
+
+    /**
+     * 批量生成使用的线程池，单个批次的并发由plan.batch.parallelism控制；队列有界，已满时拒绝
+     */
+    @Bean
+    public ThreadPoolTaskExecutor planBatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(batchPoolSize);
+        executor.setMaxPoolSize(batchPoolSize);
+        executor.setQueueCapacity(batchQueueCapacity);
+        executor.setThreadNamePrefix("plan-batch-");
+        return executor;
+    }
+
+    /**
+     * 热门计划池刷新使用的单线程池，不排队：上一次刷新未结束时新的触发直接被拒绝
+     */
+    @Bean
+    public ThreadPoolTaskExecutor planPoolExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("plan-pool-");
+        return executor;
+    }
+
+    /**
+     * 豆包调用线程池，调用方在截止时间内等待结果
+     * 使用虚拟线程：平台线程阻塞在socket读取时不响应中断，虚拟线程被中断时JDK会关闭socket，超时的HTTP请求随之结束
+     */
+    @Bean
+    public ThreadPoolTaskExecutor doubaoCallExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(callPoolSize);
+        executor.setMaxPoolSize(callPoolSize);
+        executor.setQueueCapacity(callPoolSize * 4);
+        executor.setVirtualThreads(true);
+        executor.setThreadNamePrefix("doubao-call-");
+        return executor;
+    }
+}
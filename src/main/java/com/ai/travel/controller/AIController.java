@@ -1,22 +1,47 @@
 package com.ai.travel.controller;
 
 import com.ai.travel.entity.Expense;
+import com.ai.travel.entity.PlanJob;
 import com.ai.travel.entity.TravelPlan;
 import com.ai.travel.entity.User;
+import com.ai.travel.exception.AiServiceOverloadedException;
+import com.ai.travel.exception.PlanFormatException;
 import com.ai.travel.security.JwtUtils;
 import com.ai.travel.service.AIService;
 import com.ai.travel.service.ExpenseService;
+import com.ai.travel.service.PlanBatchService;
+import com.ai.travel.service.PlanJobService;
+import com.ai.travel.service.PlanPayloadCache;
+import com.ai.travel.service.PlanStreamParser;
 import com.ai.travel.service.TravelPlanService;
 import com.ai.travel.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
@@ -29,6 +54,15 @@ public class AIController {
     @Autowired
     private TravelPlanService travelPlanService;
     
+    @Autowired
+    private PlanJobService planJobService;
+    
+    @Autowired
+    private PlanBatchService planBatchService;
+
+    @Autowired
+    private PlanPayloadCache planPayloadCache;
+    
     @Autowired
     private ExpenseService expenseService;
     
@@ -37,6 +71,12 @@ public class AIController {
     
     @Autowired
     private JwtUtils jwtUtils;
+    
+    @Autowired
+    private ThreadPoolTaskExecutor planStreamExecutor;
+    
+    @Value("${plan.stream.timeout:180s}")
+    private Duration streamTimeout;
 
     /**
      * 生成旅行计划并保存到数据库
@@ -64,32 +104,198 @@ public class AIController {
             }
             
             // 如果不是强制重新生成，检查是否存在完全相同的旅行计划
-            if (!shouldForceRegenerate && travelPlanService.hasExactSamePlan(user, travelRequest)) {
-                // 如果存在完全相同的计划，返回最近的一个
-                Optional<TravelPlan> latestPlan = travelPlanService.getLatestTravelPlan(user);
-                if (latestPlan.isPresent()) {
+            if (!shouldForceRegenerate) {
+                // 如果存在完全相同的计划，返回其中最近的一个
+                Optional<TravelPlan> samePlan = travelPlanService.findExactSamePlanId(user, travelRequest)
+                        .flatMap(id -> travelPlanService.getTravelPlanById(id, user));
+                if (samePlan.isPresent()) {
                     Map<String, Object> planInfo = new HashMap<>();
-                    planInfo.put("id", latestPlan.get().getId());
-                    planInfo.put("planData", latestPlan.get().getPlanData());
+                    planInfo.put("id", samePlan.get().getId());
+                    planInfo.put("planData", planDataOf(samePlan.get()));
                     return ResponseEntity.ok(createSuccessResponse(planInfo, "使用已有的相同旅行计划"));
                 }
+                
+                // 存在目的地、天数和预算都相同的相似计划时同样直接返回，需要新计划时客户端可带forceRegenerate重新生成
+                Optional<TravelPlan> similarPlan = travelPlanService.findSimilarPlan(user, travelRequest);
+                if (similarPlan.isPresent()) {
+                    Map<String, Object> planInfo = new HashMap<>();
+                    planInfo.put("id", similarPlan.get().getId());
+                    planInfo.put("planData", planDataOf(similarPlan.get()));
+                    planInfo.put("similar", true);
+                    planInfo.put("travelRequest", similarPlan.get().getTravelRequest());
+                    return ResponseEntity.ok(createSuccessResponse(planInfo, "使用已有的相似旅行计划"));
+                }
             }
             
             // 创建新的旅行计划
-            TravelPlan travelPlan = travelPlanService.createTravelPlan(user, travelRequest);
+            TravelPlan travelPlan = travelPlanService.createTravelPlan(user, travelRequest, shouldForceRegenerate);
             
             Map<String, Object> planInfo = new HashMap<>();
             planInfo.put("id", travelPlan.getId());
-            planInfo.put("planData", travelPlan.getPlanData());
+            planInfo.put("planData", planDataOf(travelPlan));
+            planInfo.put("fallback", travelPlan.isFallback());
             
-            return ResponseEntity.ok(createSuccessResponse(planInfo, "旅行计划生成成功"));
+            String message = travelPlan.isFallback() ? "AI服务暂时不可用，已返回参考旅行计划" : "旅行计划生成成功";
+            return ResponseEntity.ok(createSuccessResponse(planInfo, message));
             
+        } catch (AiServiceOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (TaskRejectedException e) {
+            // 按天并发生成的线程池已满
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("当前生成请求过多，请稍后重试"));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(createErrorResponse("生成旅行计划失败: " + e.getMessage()));
         }
     }
     
+    /**
+     * 流式生成旅行计划（SSE），生成过程中推送增量内容与已完成的每日行程，结束后保存到数据库
+     * @param request 包含旅行需求的请求体
+     * @param authorization JWT token
+     * @return SSE事件流：delta、destination、duration、day、invalid、done、error
+     */
+    @PostMapping("/plan/stream")
+    public ResponseEntity<?> streamTravelPlan(
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        String travelRequest = request.get("travelRequest");
+        if (travelRequest == null || travelRequest.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(createErrorResponse("旅行需求不能为空"));
+        }
+        
+        // 验证用户身份
+        User user = validateUser(authorization);
+        if (user == null) {
+            return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+        }
+        
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        try {
+            planStreamExecutor.execute(() -> runPlanStream(emitter, user, travelRequest));
+        } catch (TaskRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("当前生成请求过多，请稍后重试"));
+        }
+        
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+    
+    /**
+     * 批量生成旅行计划（SSE），各需求并发生成，每完成一项推送一次，全部完成后统一保存
+     * @param request 包含travelRequests数组的请求体
+     * @param authorization JWT token
+     * @return SSE事件流：item（未保存）、item_error、done（含保存后的ID）、error；批量线程池已满时返回503
+     */
+    @PostMapping("/plan/batch")
+    public ResponseEntity<?> generateTravelPlanBatch(
+            @RequestBody Map<String, Object> request,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        if (!(request.get("travelRequests") instanceof List<?> items) || items.isEmpty()) {
+            return ResponseEntity.badRequest().body(createErrorResponse("旅行需求列表不能为空"));
+        }
+        if (items.size() > planBatchService.getMaxSize()) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("单次最多提交" + planBatchService.getMaxSize() + "个旅行需求"));
+        }
+        
+        List<String> travelRequests = new ArrayList<>();
+        for (Object item : items) {
+            if (!(item instanceof String travelRequest) || travelRequest.trim().isEmpty()) {
+                return ResponseEntity.badRequest().body(createErrorResponse("旅行需求不能为空"));
+            }
+            travelRequests.add(travelRequest);
+        }
+        
+        // 验证用户身份
+        User user = validateUser(authorization);
+        if (user == null) {
+            return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+        }
+        
+        // 每条通道依次生成，超时时间按通道需要依次生成的需求数放大
+        int rounds = (travelRequests.size() + planBatchService.getParallelism() - 1) / planBatchService.getParallelism();
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis() * rounds);
+        try {
+            planBatchService.startBatch(user, travelRequests, planBatchListener(emitter, travelRequests))
+                    .whenComplete((travelPlans, error) -> finishPlanBatch(emitter, travelPlans, error));
+        } catch (TaskRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("当前生成请求过多，请稍后重试"));
+        }
+        
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+    
+    /**
+     * 提交异步旅行计划生成任务，立即返回任务ID
+     * @param request 包含旅行需求的请求体
+     * @param authorization JWT token
+     * @return 任务信息
+     */
+    @PostMapping("/plan/jobs")
+    public ResponseEntity<?> submitPlanJob(
+            @RequestBody Map<String, String> request,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        try {
+            String travelRequest = request.get("travelRequest");
+            if (travelRequest == null || travelRequest.trim().isEmpty()) {
+                return ResponseEntity.badRequest().body(createErrorResponse("旅行需求不能为空"));
+            }
+            
+            // 验证用户身份
+            User user = validateUser(authorization);
+            if (user == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+            }
+            
+            PlanJob job = planJobService.submitJob(user, travelRequest);
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(createSuccessResponse(toJobInfo(job), "旅行计划生成任务已提交"));
+            
+        } catch (TaskRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(createErrorResponse("当前生成任务过多，请稍后重试"));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(createErrorResponse("提交生成任务失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 查询异步生成任务状态，完成后返回对应的旅行计划ID
+     * @param jobId 任务ID
+     * @param authorization JWT token
+     * @return 任务信息
+     */
+    @GetMapping("/plan/jobs/{jobId}")
+    public ResponseEntity<?> getPlanJob(
+            @PathVariable Long jobId,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        try {
+            // 验证用户身份
+            User user = validateUser(authorization);
+            if (user == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+            }
+            
+            Optional<PlanJob> job = planJobService.getJob(jobId, user);
+            if (job.isPresent()) {
+                return ResponseEntity.ok(createSuccessResponse(toJobInfo(job.get()), "获取任务状态成功"));
+            } else {
+                return ResponseEntity.badRequest().body(createErrorResponse("任务不存在或无权访问"));
+            }
+            
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(createErrorResponse("获取任务状态失败: " + e.getMessage()));
+        }
+    }
+    
     /**
      * 获取用户最近创建的旅行计划
      * @param authorization JWT token
@@ -97,7 +303,9 @@ public class AIController {
      */
     @GetMapping("/plan/latest")
     public ResponseEntity<?> getLatestTravelPlan(
-            @RequestHeader(value = "Authorization", required = false) String authorization) {
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest) {
         try {
             // 验证用户身份
             User user = validateUser(authorization);
@@ -105,18 +313,9 @@ public class AIController {
                 return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
             }
             
-            Optional<TravelPlan> latestPlan = travelPlanService.getLatestTravelPlan(user);
-            if (latestPlan.isPresent()) {
-                // 创建包含计划数据和原始旅行需求的响应
-                Map<String, Object> planInfo = new HashMap<>();
-                planInfo.put("id", latestPlan.get().getId());
-                planInfo.put("planData", latestPlan.get().getPlanData());
-                planInfo.put("travelRequest", latestPlan.get().getTravelRequest());
-                
-                return ResponseEntity.ok(createSuccessResponse(planInfo, "获取最近旅行计划成功"));
-            } else {
-                return ResponseEntity.ok(createSuccessResponse(null, "暂无旅行计划"));
-            }
+            return conditionalPlanResponse("plan-latest:", travelPlanService.getLatestTravelPlanETag(user),
+                    acceptEncoding, webRequest, () -> travelPlanService.getLatestTravelPlan(user), this::latestPlanResponse)
+                    .orElseGet(() -> ResponseEntity.ok(createSuccessResponse(null, "暂无旅行计划")));
             
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -125,12 +324,16 @@ public class AIController {
     }
     
     /**
-     * 获取用户所有旅行计划
+     * 分页获取用户的旅行计划（按创建时间倒序）
+     * @param cursor 上一页响应中的nextCursor，首页不传
+     * @param size 每页数量
      * @param authorization JWT token
-     * @return 用户的所有旅行计划
+     * @return 本页旅行计划，nextCursor为空表示没有更多
      */
     @GetMapping("/plan/all")
     public ResponseEntity<?> getAllTravelPlans(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
             @RequestHeader(value = "Authorization", required = false) String authorization) {
         try {
             // 验证用户身份
@@ -139,8 +342,9 @@ public class AIController {
                 return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
             }
             
-            // 获取用户所有旅行计划（简化返回，只返回基本信息）
-            var plans = travelPlanService.getUserTravelPlans(user).stream()
+            // 获取用户旅行计划（简化返回，只返回基本信息）
+            TravelPlanService.PlanPage page = travelPlanService.getUserTravelPlanPage(user, cursor, size);
+            var plans = page.plans().stream()
                     .map(plan -> {
                         Map<String, Object> planInfo = new HashMap<>();
                         planInfo.put("id", plan.getId());
@@ -152,8 +356,12 @@ public class AIController {
                     })
                     .toList();
             
-            return ResponseEntity.ok(createSuccessResponse(plans, "获取旅行计划列表成功"));
+            Map<String, Object> response = createSuccessResponse(plans, "获取旅行计划列表成功");
+            response.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(response);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(createErrorResponse("获取旅行计划列表失败: " + e.getMessage()));
@@ -169,7 +377,9 @@ public class AIController {
     @GetMapping("/plan/{planId}")
     public ResponseEntity<?> getTravelPlanById(
             @PathVariable Long planId,
-            @RequestHeader(value = "Authorization", required = false) String authorization) {
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest) {
         try {
             // 验证用户身份
             User user = validateUser(authorization);
@@ -177,22 +387,9 @@ public class AIController {
                 return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
             }
             
-            Optional<TravelPlan> travelPlan = travelPlanService.getTravelPlanById(planId, user);
-            if (travelPlan.isPresent()) {
-                Map<String, Object> planDetails = new HashMap<>();
-                planDetails.put("id", travelPlan.get().getId());
-                planDetails.put("destination", travelPlan.get().getDestination());
-                planDetails.put("duration", travelPlan.get().getDuration());
-                planDetails.put("totalBudget", travelPlan.get().getTotalBudget());
-                planDetails.put("travelRequest", travelPlan.get().getTravelRequest());
-                planDetails.put("planData", travelPlan.get().getPlanData());
-                planDetails.put("createdAt", travelPlan.get().getCreatedAt());
-                planDetails.put("updatedAt", travelPlan.get().getUpdatedAt());
-                
-                return ResponseEntity.ok(createSuccessResponse(planDetails, "获取旅行计划详情成功"));
-            } else {
-                return ResponseEntity.badRequest().body(createErrorResponse("旅行计划不存在或无权访问"));
-            }
+            return conditionalPlanResponse("plan-detail:", travelPlanService.getTravelPlanETag(planId, user),
+                    acceptEncoding, webRequest, () -> travelPlanService.getTravelPlanById(planId, user), this::planDetailsResponse)
+                    .orElseGet(() -> ResponseEntity.badRequest().body(createErrorResponse("旅行计划不存在或无权访问")));
             
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -200,6 +397,38 @@ public class AIController {
         }
     }
 
+    /**
+     * 获取旅行计划某一天的行程，只读取当天数据
+     * @param planId 旅行计划ID
+     * @param dayNumber 第几天
+     * @param authorization JWT token
+     * @return 当天的行程与活动
+     */
+    @GetMapping("/plan/{planId}/day/{dayNumber}")
+    public ResponseEntity<?> getTravelPlanDay(
+            @PathVariable Long planId,
+            @PathVariable Integer dayNumber,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        try {
+            // 验证用户身份
+            User user = validateUser(authorization);
+            if (user == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+            }
+
+            Optional<Map<String, Object>> day = travelPlanService.getTravelPlanDay(planId, user, dayNumber);
+            if (day.isPresent()) {
+                return ResponseEntity.ok(createSuccessResponse(day.get(), "获取当天行程成功"));
+            } else {
+                return ResponseEntity.badRequest().body(createErrorResponse("旅行计划或当天行程不存在或无权访问"));
+            }
+
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(createErrorResponse("获取当天行程失败: " + e.getMessage()));
+        }
+    }
+
     /**
      * 添加消费记录
      */
@@ -218,7 +447,7 @@ public class AIController {
             Integer dayNumber = Integer.valueOf(request.get("dayNumber").toString());
             String item = request.get("item").toString();
             BigDecimal amount = new BigDecimal(request.get("amount").toString());
-            String category = request.get("category") != null ? request.get("category").toString() : "其他";
+            String category = request.get("category") != null ? request.get("category").toString() : ExpenseService.DEFAULT_CATEGORY;
             
             Expense expense = expenseService.addExpense(user, travelPlanId, dayNumber, item, amount, category);
             
@@ -230,6 +459,55 @@ public class AIController {
         }
     }
     
+    /**
+     * 批量添加同一旅行计划的消费记录（如导入多张票据）
+     * @param request 包含travelPlanId和expenses数组，数组元素包含dayNumber、item、amount、category
+     * @param authorization JWT token
+     * @return 新记录的ID和计划的最新总消费
+     */
+    @PostMapping("/expense/batch")
+    public ResponseEntity<?> addExpenses(
+            @RequestBody Map<String, Object> request,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        try {
+            // 验证用户身份
+            User user = validateUser(authorization);
+            if (user == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+            }
+            
+            if (request.get("travelPlanId") == null || !(request.get("expenses") instanceof List<?> items)) {
+                return ResponseEntity.badRequest().body(createErrorResponse("travelPlanId和expenses不能为空"));
+            }
+            Long travelPlanId = Long.valueOf(request.get("travelPlanId").toString());
+            List<ExpenseService.NewExpense> newExpenses = new ArrayList<>();
+            for (Object item : items) {
+                if (!(item instanceof Map<?, ?> expense)) {
+                    return ResponseEntity.badRequest().body(createErrorResponse("消费记录格式不正确"));
+                }
+                newExpenses.add(new ExpenseService.NewExpense(
+                        expense.get("dayNumber") != null ? Integer.valueOf(expense.get("dayNumber").toString()) : null,
+                        expense.get("item") != null ? expense.get("item").toString() : null,
+                        expense.get("amount") != null ? new BigDecimal(expense.get("amount").toString()) : null,
+                        expense.get("category") != null ? expense.get("category").toString() : ExpenseService.DEFAULT_CATEGORY));
+            }
+            
+            List<Expense> expenses = expenseService.addExpenses(user, travelPlanId, newExpenses);
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", expenses.size());
+            result.put("ids", expenses.stream().map(Expense::getId).toList());
+            result.put("total", expenseService.getTotalExpenseByTravelPlan(user, travelPlanId));
+            return ResponseEntity.ok(createSuccessResponse(result, "消费记录批量添加成功"));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(createErrorResponse("批量添加消费记录失败: " + e.getMessage()));
+        }
+    }
+    
     /**
      * 删除消费记录
      */
@@ -261,7 +539,8 @@ public class AIController {
     public ResponseEntity<?> getExpensesByDay(
             @PathVariable Long travelPlanId,
             @PathVariable Integer dayNumber,
-            @RequestHeader(value = "Authorization", required = false) String authorization) {
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            WebRequest webRequest) {
         try {
             // 验证用户身份
             User user = validateUser(authorization);
@@ -269,9 +548,10 @@ public class AIController {
                 return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
             }
             
-            List<Expense> expenses = expenseService.getExpensesByTravelPlanAndDay(user, travelPlanId, dayNumber);
-            
-            return ResponseEntity.ok(createSuccessResponse(expenses, "获取消费记录成功"));
+            // 消费记录未变化时直接返回304
+            return conditionalResponse(expenseService.getExpensesETagByDay(user, travelPlanId, dayNumber), webRequest,
+                    () -> createSuccessResponse(expenseService.getExpensesByTravelPlanAndDay(user, travelPlanId, dayNumber),
+                            "获取消费记录成功"));
             
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -284,6 +564,32 @@ public class AIController {
      */
     @GetMapping("/expense/total/{travelPlanId}")
     public ResponseEntity<?> getTotalExpense(
+            @PathVariable Long travelPlanId,
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            WebRequest webRequest) {
+        try {
+            // 验证用户身份
+            User user = validateUser(authorization);
+            if (user == null) {
+                return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
+            }
+            
+            // 消费记录未变化时直接返回304
+            return conditionalResponse(expenseService.getExpensesETag(user, travelPlanId), webRequest,
+                    () -> createSuccessResponse(expenseService.getTotalExpenseByTravelPlan(user, travelPlanId),
+                            "获取总消费成功"));
+            
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(createErrorResponse("获取总消费失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 获取旅行计划的消费分布（每天、每类及每天每类的合计）
+     */
+    @GetMapping("/expense/breakdown/{travelPlanId}")
+    public ResponseEntity<?> getExpenseBreakdown(
             @PathVariable Long travelPlanId,
             @RequestHeader(value = "Authorization", required = false) String authorization) {
         try {
@@ -293,13 +599,13 @@ public class AIController {
                 return ResponseEntity.badRequest().body(createErrorResponse("用户未登录或token无效"));
             }
             
-            BigDecimal totalExpense = expenseService.getTotalExpenseByTravelPlan(user, travelPlanId);
+            Map<String, Object> breakdown = expenseService.getExpenseBreakdown(user, travelPlanId);
             
-            return ResponseEntity.ok(createSuccessResponse(totalExpense, "获取总消费成功"));
+            return ResponseEntity.ok(createSuccessResponse(breakdown, "获取消费分布成功"));
             
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
-                    .body(createErrorResponse("获取总消费失败: " + e.getMessage()));
+                    .body(createErrorResponse("获取消费分布失败: " + e.getMessage()));
         }
     }
 
@@ -315,6 +621,146 @@ public class AIController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * 执行流式生成并推送事件，客户端断开后仍继续生成以保证计划落库
+     * 增量内容结构不合法时只推送一次invalid事件并停止增量解析，生成继续进行，结束后对完整内容统一修复
+     */
+    private void runPlanStream(SseEmitter emitter, User user, String travelRequest) {
+        PlanStreamParser planParser = new PlanStreamParser(new PlanStreamParser.Listener() {
+            @Override
+            public void onDestination(String destination) {
+                sendEvent(emitter, "destination", Map.of("destination", destination));
+            }
+            
+            @Override
+            public void onDuration(int duration) {
+                sendEvent(emitter, "duration", Map.of("duration", duration));
+            }
+            
+            @Override
+            public void onDay(JsonNode day) {
+                sendEvent(emitter, "day", day);
+            }
+        }, true);
+        
+        AtomicBoolean parsing = new AtomicBoolean(true);
+        try {
+            String aiResponse = aiService.streamTravelPlan(travelRequest, delta -> {
+                sendEvent(emitter, "delta", Map.of("content", delta));
+                if (!parsing.get()) {
+                    return;
+                }
+                try {
+                    planParser.feed(delta);
+                } catch (PlanFormatException e) {
+                    // 不再推送结构化事件，但继续接收内容，结束后由修复流程处理完整文本
+                    parsing.set(false);
+                    sendEvent(emitter, "invalid", createErrorResponse(e.getMessage()));
+                }
+            });
+            
+            TravelPlan travelPlan = travelPlanService.saveGeneratedPlan(user, travelRequest, aiResponse);
+            
+            Map<String, Object> planInfo = new HashMap<>();
+            planInfo.put("id", travelPlan.getId());
+            planInfo.put("planData", planDataOf(travelPlan));
+            planInfo.put("fallback", travelPlan.isFallback());
+            sendEvent(emitter, "done", createSuccessResponse(planInfo, "旅行计划生成成功"));
+        } catch (Exception e) {
+            sendEvent(emitter, "error", createErrorResponse("生成旅行计划失败: " + e.getMessage()));
+        } finally {
+            emitter.complete();
+        }
+    }
+    
+    /**
+     * 批量生成的事件推送：每完成一项推送item（尚未保存，saved为false且没有id，保存后的id在done事件中给出）
+     */
+    private PlanBatchService.Listener planBatchListener(SseEmitter emitter, List<String> travelRequests) {
+        return new PlanBatchService.Listener() {
+            @Override
+            public void onItem(int index, TravelPlan travelPlan) {
+                Map<String, Object> itemInfo = new HashMap<>();
+                itemInfo.put("index", index);
+                itemInfo.put("travelRequest", travelPlan.getTravelRequest());
+                itemInfo.put("planData", planDataOf(travelPlan));
+                itemInfo.put("fallback", travelPlan.isFallback());
+                itemInfo.put("saved", false);
+                sendEvent(emitter, "item", itemInfo);
+            }
+            
+            @Override
+            public void onItemFailed(int index, Exception e) {
+                Map<String, Object> itemInfo = new HashMap<>();
+                itemInfo.put("index", index);
+                itemInfo.put("travelRequest", travelRequests.get(index));
+                itemInfo.put("message", "生成旅行计划失败: " + e.getMessage());
+                sendEvent(emitter, "item_error", itemInfo);
+            }
+        };
+    }
+    
+    /**
+     * 批量生成全部保存后推送done事件，包含各项保存后的ID；客户端断开后仍继续生成以保证计划落库
+     */
+    private void finishPlanBatch(SseEmitter emitter, List<TravelPlan> travelPlans, Throwable error) {
+        try {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                sendEvent(emitter, "error", createErrorResponse("批量生成旅行计划失败: " + cause.getMessage()));
+                return;
+            }
+            
+            List<Map<String, Object>> planInfos = new ArrayList<>();
+            int failed = 0;
+            for (int i = 0; i < travelPlans.size(); i++) {
+                TravelPlan travelPlan = travelPlans.get(i);
+                Map<String, Object> planInfo = new HashMap<>();
+                planInfo.put("index", i);
+                planInfo.put("id", travelPlan != null ? travelPlan.getId() : null);
+                planInfo.put("fallback", travelPlan != null && travelPlan.isFallback());
+                planInfos.add(planInfo);
+                if (travelPlan == null) {
+                    failed++;
+                }
+            }
+            
+            Map<String, Object> batchInfo = new HashMap<>();
+            batchInfo.put("plans", planInfos);
+            batchInfo.put("succeeded", travelPlans.size() - failed);
+            batchInfo.put("failed", failed);
+            sendEvent(emitter, "done", createSuccessResponse(batchInfo, "批量生成完成"));
+        } finally {
+            emitter.complete();
+        }
+    }
+    
+    /**
+     * 发送SSE事件，忽略客户端已断开的情况
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开连接
+        }
+    }
+    
+    /**
+     * 构建任务信息
+     */
+    private Map<String, Object> toJobInfo(PlanJob job) {
+        Map<String, Object> jobInfo = new HashMap<>();
+        jobInfo.put("jobId", job.getId());
+        jobInfo.put("status", job.getStatus());
+        jobInfo.put("planId", job.getTravelPlan() != null ? job.getTravelPlan().getId() : null);
+        jobInfo.put("errorMessage", job.getErrorMessage());
+        jobInfo.put("createdAt", job.getCreatedAt());
+        jobInfo.put("finishedAt", job.getFinishedAt());
+        return jobInfo;
+    }
+    
     /**
      * 验证用户身份
      */
@@ -333,6 +779,170 @@ public class AIController {
         return null;
     }
 
+    /**
+     * 最近计划的响应体，包含计划数据和原始旅行需求
+     */
+    private Map<String, Object> latestPlanResponse(TravelPlan travelPlan) {
+        Map<String, Object> planInfo = new HashMap<>();
+        planInfo.put("id", travelPlan.getId());
+        planInfo.put("planData", planDataOf(travelPlan));
+        planInfo.put("travelRequest", travelPlan.getTravelRequest());
+        return createSuccessResponse(planInfo, "获取最近旅行计划成功");
+    }
+
+    /**
+     * 计划详情的响应体
+     */
+    private Map<String, Object> planDetailsResponse(TravelPlan travelPlan) {
+        Map<String, Object> planDetails = new HashMap<>();
+        planDetails.put("id", travelPlan.getId());
+        planDetails.put("destination", travelPlan.getDestination());
+        planDetails.put("duration", travelPlan.getDuration());
+        planDetails.put("totalBudget", travelPlan.getTotalBudget());
+        planDetails.put("travelRequest", travelPlan.getTravelRequest());
+        planDetails.put("planData", planDataOf(travelPlan));
+        planDetails.put("createdAt", travelPlan.getCreatedAt());
+        planDetails.put("updatedAt", travelPlan.getUpdatedAt());
+        return createSuccessResponse(planDetails, "获取旅行计划详情成功");
+    }
+
+    /**
+     * 计划的条件请求响应
+     * 客户端缓存的计划未变化时直接返回304，不加载计划数据；压缩与未压缩的表示使用不同的ETag。
+     * 需要返回内容时，ETag与响应体始终取自同一次加载的计划，计划在两次查询之间被修改时按实际加载的版本返回
+     * @param cacheKeyPrefix 预压缩响应体的缓存键前缀
+     * @param planETag 只查询版本信息得到的计划ETag
+     * @param loader 加载计划
+     * @param responseBody 由计划构建响应体
+     * @return 响应，计划不存在时为空
+     */
+    private Optional<ResponseEntity<?>> conditionalPlanResponse(String cacheKeyPrefix, Optional<String> planETag,
+                                                                String acceptEncoding, WebRequest webRequest,
+                                                                Supplier<Optional<TravelPlan>> loader,
+                                                                Function<TravelPlan, Map<String, Object>> responseBody) {
+        Optional<String> encoding = planPayloadCache.negotiate(acceptEncoding);
+        Optional<String> eTag = planETag.map(tag -> representationETag(tag, encoding));
+        Optional<ResponseEntity<?>> notModified = notModifiedResponse(eTag, webRequest, true);
+        if (notModified.isPresent()) {
+            return notModified;
+        }
+        
+        // 客户端接受gzip时直接返回预压缩的响应体；缓存未命中时加载的计划在下面复用
+        AtomicReference<Optional<TravelPlan>> loaded = new AtomicReference<>();
+        if (eTag.isPresent() && encoding.isPresent()) {
+            byte[] payload = planPayloadCache.get(cacheKeyPrefix + eTag.get(), () -> {
+                Optional<TravelPlan> travelPlan = loader.get();
+                loaded.set(travelPlan);
+                return travelPlan.filter(plan -> travelPlanService.hasETag(plan, planETag.get()))
+                        .map(responseBody)
+                        .orElse(null);
+            });
+            if (payload != null) {
+                return Optional.of(compressedResponse(payload, encoding.get(), eTag.get()));
+            }
+        }
+        
+        Optional<TravelPlan> travelPlan = loaded.get() != null ? loaded.get() : loader.get();
+        if (travelPlan.isEmpty()) {
+            return Optional.empty();
+        }
+        TravelPlan plan = travelPlan.get();
+        String loadedETag = representationETag(travelPlanService.getETag(plan), encoding);
+        if (encoding.isPresent()) {
+            byte[] payload = planPayloadCache.get(cacheKeyPrefix + loadedETag, () -> responseBody.apply(plan));
+            return Optional.of(compressedResponse(payload, encoding.get(), loadedETag));
+        }
+        return Optional.of(ResponseEntity.ok()
+                .eTag(loadedETag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(responseBody.apply(plan)));
+    }
+    
+    /**
+     * 条件请求响应：客户端缓存的内容未变化时返回304，不再加载数据；否则返回带ETag的响应体
+     * 响应体在ETag之后读取，两次查询之间数据被修改时响应体比ETag新，客户端下次请求会拿到新的ETag
+     * @param eTag 只查询版本信息得到的ETag，为空时不做条件判断
+     * @param responseBody 加载数据并构建响应体
+     */
+    private ResponseEntity<?> conditionalResponse(Optional<String> eTag, WebRequest webRequest,
+                                                  Supplier<Map<String, Object>> responseBody) {
+        Optional<ResponseEntity<?>> notModified = notModifiedResponse(eTag, webRequest, false);
+        if (notModified.isPresent()) {
+            return notModified.get();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        eTag.ifPresent(response::eTag);
+        return response.body(responseBody.get());
+    }
+    
+    /**
+     * 客户端缓存的表示与ETag一致时的304响应
+     * @param varyByEncoding 响应是否随Accept-Encoding变化
+     * @return 304响应，需要返回内容时为空
+     */
+    private Optional<ResponseEntity<?>> notModifiedResponse(Optional<String> eTag, WebRequest webRequest,
+                                                            boolean varyByEncoding) {
+        if (eTag.isEmpty() || !matchesIfNoneMatch(eTag.get(), webRequest)) {
+            return Optional.empty();
+        }
+        ResponseEntity.HeadersBuilder<?> response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag.get());
+        if (varyByEncoding) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return Optional.of(response.build());
+    }
+    
+    /**
+     * If-None-Match是否包含该ETag（弱比较）
+     * 不使用WebRequest.checkNotModified：它会把这里的ETag提前写入响应头，计划在两次查询之间被修改时响应会带着旧的ETag
+     */
+    private boolean matchesIfNoneMatch(String eTag, WebRequest webRequest) {
+        String[] ifNoneMatch = webRequest.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String quotedETag = "\"" + eTag + "\"";
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(quotedETag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 某种编码表示的ETag：压缩表示在计划ETag后加上编码名
+     */
+    private String representationETag(String planETag, Optional<String> encoding) {
+        return encoding.map(coding -> planETag + "-" + coding).orElse(planETag);
+    }
+    
+    /**
+     * 按原字节返回预压缩的JSON响应体
+     */
+    private ResponseEntity<byte[]> compressedResponse(byte[] payload, String encoding, String eTag) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag)
+                .header(HttpHeaders.CONTENT_ENCODING, encoding)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(payload);
+    }
+
+    /**
+     * 计划数据按原样嵌入响应（plan_data本身是合法JSON），不再转义为字符串
+     */
+    private RawValue planDataOf(TravelPlan travelPlan) {
+        String planData = travelPlan.getPlanData();
+        return planData == null ? null : new RawValue(planData);
+    }
+
     /**
      * 创建成功响应
      */
@@ -0,0 +1,22 @@
+package com.ai.travel.entity;
+
+import com.ai.travel.util.CompressedJson;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * 压缩JSON与BLOB列之间的转换，读取时不解压
+ */
+@Converter
+public class CompressedJsonConverter implements AttributeConverter<CompressedJson, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(CompressedJson attribute) {
+        return attribute == null ? null : attribute.bytes();
+    }
+
+    @Override
+    public CompressedJson convertToEntityAttribute(byte[] dbData) {
+        return dbData == null ? null : CompressedJson.fromBytes(dbData);
+    }
+}
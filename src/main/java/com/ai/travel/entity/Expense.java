@@ -10,8 +10,13 @@ import java.time.LocalDateTime;
 @Table(name = "expenses")
 public class Expense {
     
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
+    // 序列按50个一段预分配ID，使批量插入可以合并为JDBC批处理（IDENTITY会逐条插入）；
+    // MySQL没有序列，Hibernate以expenses_seq表模拟
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expenses_seq")
+    @SequenceGenerator(name = "expenses_seq", sequenceName = "expenses_seq", allocationSize = Expense.ID_ALLOCATION_SIZE)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,105 @@
+package com.ai.travel.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+
+/**
+ * 消费汇总，按旅行计划、天数和类别累计金额与笔数，随消费记录的增删在同一事务中增量更新
+ * dayNumber为ALL_DAYS的行是整个计划的汇总，category为ALL_CATEGORIES的行是所有类别的汇总；
+ * 每次累加都递增changeCount，合计行在笔数减为0后也保留，其changeCount即对应范围消费记录的版本号
+ */
+@Entity
+@Table(name = "expense_rollups", indexes = {
+    @Index(name = "idx_expense_rollups_plan_day_category", columnList = "travel_plan_id, day_number, category", unique = true)
+})
+public class ExpenseRollup {
+    
+    public static final int ALL_DAYS = 0;
+    
+    public static final String ALL_CATEGORIES = "";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "travel_plan_id", nullable = false)
+    private TravelPlan travelPlan;
+    
+    @Column(name = "day_number", nullable = false)
+    private Integer dayNumber;
+    
+    @Column(name = "category", nullable = false, length = 50)
+    private String category;
+    
+    @Column(name = "total_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalAmount;
+    
+    @Column(name = "expense_count", nullable = false)
+    private Long expenseCount;
+    
+    @Column(name = "change_count", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long changeCount;
+    
+    // 构造函数
+    public ExpenseRollup() {
+    }
+    
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public TravelPlan getTravelPlan() {
+        return travelPlan;
+    }
+    
+    public void setTravelPlan(TravelPlan travelPlan) {
+        this.travelPlan = travelPlan;
+    }
+    
+    public Integer getDayNumber() {
+        return dayNumber;
+    }
+    
+    public void setDayNumber(Integer dayNumber) {
+        this.dayNumber = dayNumber;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+    
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+    
+    public Long getExpenseCount() {
+        return expenseCount;
+    }
+    
+    public void setExpenseCount(Long expenseCount) {
+        this.expenseCount = expenseCount;
+    }
+    
+    public Long getChangeCount() {
+        return changeCount;
+    }
+    
+    public void setChangeCount(Long changeCount) {
+        this.changeCount = changeCount;
+    }
+}
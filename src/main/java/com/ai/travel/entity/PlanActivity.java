@@ -0,0 +1,125 @@
+package com.ai.travel.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+
+/**
+ * 旅行计划某天中的一项活动，由plan_data物化而来
+ */
+@Entity
+@Table(name = "plan_activities", indexes = {
+    @Index(name = "idx_plan_activities_day", columnList = "plan_day_id, position"),
+    @Index(name = "idx_plan_activities_plan", columnList = "travel_plan_id")
+})
+public class PlanActivity {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "plan_day_id", nullable = false)
+    private PlanDay planDay;
+    
+    // 冗余所属计划，便于按计划整体删除
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "travel_plan_id", nullable = false)
+    private TravelPlan travelPlan;
+    
+    // 活动在当天中的顺序
+    @Column(name = "position", nullable = false)
+    private Integer position;
+    
+    @Column(name = "name", length = 200)
+    private String name;
+    
+    @Column(name = "time", length = 50)
+    private String time;
+    
+    @Column(name = "budget", precision = 10, scale = 2)
+    private BigDecimal budget;
+    
+    @Column(name = "description", columnDefinition = "TEXT")
+    private String description;
+    
+    // 构造函数
+    public PlanActivity() {
+    }
+    
+    public PlanActivity(PlanDay planDay, Integer position, String name, String time,
+                        BigDecimal budget, String description) {
+        this.planDay = planDay;
+        this.travelPlan = planDay.getTravelPlan();
+        this.position = position;
+        this.name = name;
+        this.time = time;
+        this.budget = budget;
+        this.description = description;
+    }
+    
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public PlanDay getPlanDay() {
+        return planDay;
+    }
+    
+    public void setPlanDay(PlanDay planDay) {
+        this.planDay = planDay;
+    }
+    
+    public TravelPlan getTravelPlan() {
+        return travelPlan;
+    }
+    
+    public void setTravelPlan(TravelPlan travelPlan) {
+        this.travelPlan = travelPlan;
+    }
+    
+    public Integer getPosition() {
+        return position;
+    }
+    
+    public void setPosition(Integer position) {
+        this.position = position;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getTime() {
+        return time;
+    }
+    
+    public void setTime(String time) {
+        this.time = time;
+    }
+    
+    public BigDecimal getBudget() {
+        return budget;
+    }
+    
+    public void setBudget(BigDecimal budget) {
+        this.budget = budget;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public void setDescription(String description) {
+        this.description = description;
+    }
+}
@@ -0,0 +1,82 @@
+package com.ai.travel.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * 旅行计划中的一天，由plan_data物化而来
+ */
+@Entity
+@Table(name = "plan_days", indexes = {
+    @Index(name = "idx_plan_days_plan_day", columnList = "travel_plan_id, day_number", unique = true)
+})
+public class PlanDay {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "travel_plan_id", nullable = false)
+    private TravelPlan travelPlan;
+    
+    @Column(name = "day_number", nullable = false)
+    private Integer dayNumber;
+    
+    @Column(name = "date", length = 20)
+    private String date;
+    
+    @Column(name = "title", length = 200)
+    private String title;
+    
+    // 构造函数
+    public PlanDay() {
+    }
+    
+    public PlanDay(TravelPlan travelPlan, Integer dayNumber, String date, String title) {
+        this.travelPlan = travelPlan;
+        this.dayNumber = dayNumber;
+        this.date = date;
+        this.title = title;
+    }
+    
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public TravelPlan getTravelPlan() {
+        return travelPlan;
+    }
+    
+    public void setTravelPlan(TravelPlan travelPlan) {
+        this.travelPlan = travelPlan;
+    }
+    
+    public Integer getDayNumber() {
+        return dayNumber;
+    }
+    
+    public void setDayNumber(Integer dayNumber) {
+        this.dayNumber = dayNumber;
+    }
+    
+    public String getDate() {
+        return date;
+    }
+    
+    public void setDate(String date) {
+        this.date = date;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public void setTitle(String title) {
+        this.title = title;
+    }
+}
@@ -0,0 +1,164 @@
+package com.ai.travel.entity;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "plan_jobs", indexes = {
+    @Index(name = "idx_plan_jobs_status", columnList = "status"),
+    @Index(name = "idx_plan_jobs_owner_status", columnList = "owner, status")
+})
+public class PlanJob {
+    
+    /**
+     * 任务状态：排队中、执行中、已完成、失败
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+    
+    @Column(name = "travel_request", columnDefinition = "TEXT", nullable = false)
+    private String travelRequest;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "travel_plan_id")
+    private TravelPlan travelPlan;
+    
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    // 处理该任务的服务实例，实例存活期间定时刷新heartbeat_at
+    @Column(name = "owner", length = 64)
+    private String owner;
+    
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+    
+    // 构造函数
+    public PlanJob() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    public PlanJob(User user, String travelRequest) {
+        this();
+        this.user = user;
+        this.travelRequest = travelRequest;
+        this.status = Status.QUEUED;
+    }
+    
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public User getUser() {
+        return user;
+    }
+    
+    public void setUser(User user) {
+        this.user = user;
+    }
+    
+    public String getTravelRequest() {
+        return travelRequest;
+    }
+    
+    public void setTravelRequest(String travelRequest) {
+        this.travelRequest = travelRequest;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    public TravelPlan getTravelPlan() {
+        return travelPlan;
+    }
+    
+    public void setTravelPlan(TravelPlan travelPlan) {
+        this.travelPlan = travelPlan;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public String getOwner() {
+        return owner;
+    }
+    
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+    
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+    
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+}
@@ -1,6 +1,10 @@
 package com.ai.travel.entity;
 
+import com.ai.travel.util.CompressedJson;
+import com.ai.travel.util.ContentHash;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
@@ -9,7 +13,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "travel_plans")
+@Table(name = "travel_plans", indexes = {
+    @Index(name = "idx_travel_plans_user_request_hash", columnList = "user_id, travel_request_hash"),
+    @Index(name = "idx_travel_plans_user_created", columnList = "user_id, created_at, id")
+})
 public class TravelPlan {
     
     @Id
@@ -32,10 +39,24 @@ public class TravelPlan {
     @Column(name = "travel_request", columnDefinition = "TEXT")
     private String travelRequest;
     
+    // travel_request的SHA-256，用于按索引查找完全相同的需求
+    @Column(name = "travel_request_hash", length = 64)
+    private String travelRequestHash;
+    
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "plan_data", columnDefinition = "JSON")
     private String planData;
     
+    // 压缩存储的计划数据，与plan_data二选一；读取时在首次访问才解压
+    @Convert(converter = CompressedJsonConverter.class)
+    @Column(name = "plan_data_z", columnDefinition = "LONGBLOB")
+    private CompressedJson planDataCompressed;
+    
+    // 乐观锁版本号，每次更新递增，与updated_at一起组成计划的ETag
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+    
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -44,6 +65,19 @@ public class TravelPlan {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    // 是否为AI不可用时的兜底计划；新增此列之前创建的计划为null，无法判断来源
+    @Column(name = "fallback")
+    private Boolean fallback;
+    
+    // 每日行程是否已物化（不论得到几天）；物化表出现之前创建的计划为null，首次读取单日行程时补建
+    @Column(name = "itinerary_materialized")
+    private Boolean itineraryMaterialized;
+    
+    // 生成时已解析好的计划树，保存时用于物化每日行程，避免再次解析plan_data；不持久化
+    @Transient
+    @JsonIgnore
+    private JsonNode parsedPlanData;
+    
     // 构造函数
     public TravelPlan() {
         this.createdAt = LocalDateTime.now();
@@ -58,6 +92,7 @@ public class TravelPlan {
         this.duration = duration;
         this.totalBudget = totalBudget;
         this.travelRequest = travelRequest;
+        this.travelRequestHash = ContentHash.sha256Hex(travelRequest);
         this.planData = planData;
     }
     
@@ -108,17 +143,40 @@ public class TravelPlan {
     
     public void setTravelRequest(String travelRequest) {
         this.travelRequest = travelRequest;
+        this.travelRequestHash = ContentHash.sha256Hex(travelRequest);
+    }
+    
+    public String getTravelRequestHash() {
+        return travelRequestHash;
     }
     
     public String getPlanData() {
-        return planData;
+        return planDataCompressed != null ? planDataCompressed.json() : planData;
     }
     
     public void setPlanData(String planData) {
         this.planData = planData;
+        this.planDataCompressed = null;
+        this.parsedPlanData = null;
         this.updatedAt = LocalDateTime.now();
     }
     
+    /**
+     * 以压缩形式保存计划数据，同时清空未压缩的plan_data
+     */
+    public void setCompressedPlanData(CompressedJson planDataCompressed) {
+        this.planDataCompressed = planDataCompressed;
+        this.planData = null;
+    }
+    
+    public boolean isPlanDataCompressed() {
+        return planDataCompressed != null;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -135,6 +193,37 @@ public class TravelPlan {
         this.updatedAt = updatedAt;
     }
     
+    public boolean isItineraryMaterialized() {
+        return Boolean.TRUE.equals(itineraryMaterialized);
+    }
+    
+    public void setItineraryMaterialized(boolean itineraryMaterialized) {
+        this.itineraryMaterialized = itineraryMaterialized;
+    }
+    
+    public JsonNode getParsedPlanData() {
+        return parsedPlanData;
+    }
+    
+    public void setParsedPlanData(JsonNode parsedPlanData) {
+        this.parsedPlanData = parsedPlanData;
+    }
+    
+    public boolean isFallback() {
+        return Boolean.TRUE.equals(fallback);
+    }
+    
+    /**
+     * 是否已知为AI生成的计划（兜底计划与来源未知的旧计划都不是）
+     */
+    public boolean isKnownGenerated() {
+        return Boolean.FALSE.equals(fallback);
+    }
+    
+    public void setFallback(boolean fallback) {
+        this.fallback = fallback;
+    }
+    
     @PreUpdate
     public void preUpdate() {
         this.updatedAt = LocalDateTime.now();
@@ -0,0 +1,11 @@
+package com.ai.travel.exception;
+
+/**
+ * 发往豆包的并发已达上限且排队超时，请求被快速拒绝
+ */
+public class AiServiceOverloadedException extends RuntimeException {
+
+    public AiServiceOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ai.travel.exception;
+
+/**
+ * 豆包服务不可用（熔断打开、调用超时或失败），调用方应使用兜底计划
+ */
+public class AiServiceUnavailableException extends RuntimeException {
+
+    public AiServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public AiServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
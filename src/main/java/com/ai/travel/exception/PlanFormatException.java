@@ -0,0 +1,15 @@
+package com.ai.travel.exception;
+
+/**
+ * AI返回的旅行计划不符合约定的JSON结构
+ */
+public class PlanFormatException extends RuntimeException {
+
+    public PlanFormatException(String message) {
+        super(message);
+    }
+
+    public PlanFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -3,9 +3,11 @@ package com.ai.travel.repository;
 import com.ai.travel.entity.Expense;
 import com.ai.travel.entity.TravelPlan;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -35,6 +37,16 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long> {
     @Query("SELECT SUM(e.amount) FROM Expense e WHERE e.travelPlan = :travelPlan AND e.dayNumber = :dayNumber")
     BigDecimal sumAmountByTravelPlanAndDay(@Param("travelPlan") TravelPlan travelPlan, @Param("dayNumber") Integer dayNumber);
     
+    /**
+     * 将ID序列推进到已有最大ID之后（改用序列前的记录由自增列生成ID）；只会前移，可重复执行
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE expenses_seq SET next_val = GREATEST(next_val, " +
+                   "(SELECT COALESCE(MAX(id), 0) FROM expenses) + :gap)",
+           nativeQuery = true)
+    int alignIdSequence(@Param("gap") long gap);
+    
     /**
      * 根据旅行计划ID删除消费记录
      */
@@ -0,0 +1,108 @@
+package com.ai.travel.repository;
+
+import com.ai.travel.entity.ExpenseRollup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ExpenseRollupRepository extends JpaRepository<ExpenseRollup, Long> {
+    
+    /**
+     * 查找某个汇总行
+     */
+    Optional<ExpenseRollup> findByTravelPlanIdAndDayNumberAndCategory(Long travelPlanId, Integer dayNumber, String category);
+    
+    /**
+     * 查找旅行计划的全部非空汇总行
+     */
+    @Query("SELECT r FROM ExpenseRollup r WHERE r.travelPlan.id = :travelPlanId AND r.expenseCount > 0 " +
+           "ORDER BY r.dayNumber, r.category")
+    List<ExpenseRollup> findBreakdownByTravelPlanId(@Param("travelPlanId") Long travelPlanId);
+    
+    /**
+     * 查询某个汇总行的变更次数（用于ETag校验），不加载汇总行本身
+     */
+    @Query("SELECT r.changeCount FROM ExpenseRollup r WHERE r.travelPlan.id = :travelPlanId " +
+           "AND r.dayNumber = :dayNumber AND r.category = :category")
+    Optional<Long> findChangeCount(@Param("travelPlanId") Long travelPlanId,
+                                   @Param("dayNumber") Integer dayNumber,
+                                   @Param("category") String category);
+    
+    /**
+     * 查询旅行计划各汇总行中最大的变更次数
+     */
+    @Query("SELECT COALESCE(MAX(r.changeCount), 0) FROM ExpenseRollup r WHERE r.travelPlan.id = :travelPlanId")
+    long findMaxChangeCountByTravelPlanId(@Param("travelPlanId") Long travelPlanId);
+    
+    /**
+     * 累加一个汇总行的金额与笔数并递增变更次数，行不存在时插入；由数据库原子完成，并发增删不会丢失更新
+     */
+    @Modifying
+    @Query(value = "INSERT INTO expense_rollups (travel_plan_id, day_number, category, total_amount, expense_count, change_count) " +
+                   "VALUES (:travelPlanId, :dayNumber, :category, :amount, :count, 1) " +
+                   "ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), " +
+                   "expense_count = expense_count + VALUES(expense_count), change_count = change_count + 1",
+           nativeQuery = true)
+    int increment(@Param("travelPlanId") Long travelPlanId,
+                  @Param("dayNumber") Integer dayNumber,
+                  @Param("category") String category,
+                  @Param("amount") BigDecimal amount,
+                  @Param("count") long count);
+    
+    /**
+     * 按消费记录重建旅行计划的全部汇总行（需先删除旧行）
+     * 早期未校验天数，day_number <= 0的旧记录只计入全程汇总，不生成按天的行，以免与全程汇总行冲突
+     * @param changeCount 新汇总行的变更次数，应大于旧汇总行的变更次数，以免ETag与重建前重复
+     */
+    @Modifying
+    @Query(value = "INSERT INTO expense_rollups (travel_plan_id, day_number, category, total_amount, expense_count, change_count) " +
+                   "SELECT travel_plan_id, day_number, COALESCE(NULLIF(category, ''), :defaultCategory), SUM(amount), COUNT(*), :changeCount " +
+                   "FROM expenses WHERE travel_plan_id = :travelPlanId AND day_number > :allDays " +
+                   "GROUP BY travel_plan_id, day_number, COALESCE(NULLIF(category, ''), :defaultCategory) " +
+                   "UNION ALL SELECT travel_plan_id, day_number, :allCategories, SUM(amount), COUNT(*), :changeCount " +
+                   "FROM expenses WHERE travel_plan_id = :travelPlanId AND day_number > :allDays " +
+                   "GROUP BY travel_plan_id, day_number " +
+                   "UNION ALL SELECT travel_plan_id, :allDays, COALESCE(NULLIF(category, ''), :defaultCategory), SUM(amount), COUNT(*), :changeCount " +
+                   "FROM expenses WHERE travel_plan_id = :travelPlanId " +
+                   "GROUP BY travel_plan_id, COALESCE(NULLIF(category, ''), :defaultCategory) " +
+                   "UNION ALL SELECT travel_plan_id, :allDays, :allCategories, SUM(amount), COUNT(*), :changeCount " +
+                   "FROM expenses WHERE travel_plan_id = :travelPlanId GROUP BY travel_plan_id",
+           nativeQuery = true)
+    int insertFromExpenses(@Param("travelPlanId") Long travelPlanId,
+                           @Param("allDays") Integer allDays,
+                           @Param("allCategories") String allCategories,
+                           @Param("defaultCategory") String defaultCategory,
+                           @Param("changeCount") long changeCount);
+    
+    /**
+     * 按ID顺序查找有消费记录但还没有汇总行的旅行计划（用于回填）
+     */
+    @Query(value = "SELECT DISTINCT e.travel_plan_id FROM expenses e WHERE e.travel_plan_id > :afterId AND NOT EXISTS " +
+                   "(SELECT 1 FROM expense_rollups r WHERE r.travel_plan_id = e.travel_plan_id) ORDER BY e.travel_plan_id",
+           nativeQuery = true)
+    List<Long> findTravelPlanIdsWithoutRollupsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * 删除旅行计划中笔数已减为0的分类汇总行；合计行保留，其变更次数用作ETag，不能因删除而重新计数
+     */
+    @Modifying
+    @Query("DELETE FROM ExpenseRollup r WHERE r.travelPlan.id = :travelPlanId AND r.expenseCount = 0 " +
+           "AND r.category <> :allCategories")
+    int deleteEmptyByTravelPlanId(@Param("travelPlanId") Long travelPlanId,
+                                  @Param("allCategories") String allCategories);
+    
+    /**
+     * 删除旅行计划的全部汇总行
+     */
+    @Modifying
+    @Query("DELETE FROM ExpenseRollup r WHERE r.travelPlan.id = :travelPlanId")
+    int deleteByTravelPlanId(@Param("travelPlanId") Long travelPlanId);
+}
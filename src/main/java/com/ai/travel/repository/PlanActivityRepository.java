@@ -0,0 +1,27 @@
+package com.ai.travel.repository;
+
+import com.ai.travel.entity.PlanActivity;
+import com.ai.travel.entity.PlanDay;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PlanActivityRepository extends JpaRepository<PlanActivity, Long> {
+    
+    /**
+     * 按顺序查找某一天的活动
+     */
+    List<PlanActivity> findByPlanDayOrderByPositionAsc(PlanDay planDay);
+    
+    /**
+     * 删除旅行计划的全部活动
+     */
+    @Modifying
+    @Query("DELETE FROM PlanActivity a WHERE a.travelPlan.id = :travelPlanId")
+    int deleteByTravelPlanId(@Param("travelPlanId") Long travelPlanId);
+}
@@ -0,0 +1,26 @@
+package com.ai.travel.repository;
+
+import com.ai.travel.entity.PlanDay;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface PlanDayRepository extends JpaRepository<PlanDay, Long> {
+    
+    /**
+     * 根据旅行计划ID和天数查找某一天
+     */
+    Optional<PlanDay> findByTravelPlanIdAndDayNumber(Long travelPlanId, Integer dayNumber);
+    
+    /**
+     * 删除旅行计划的全部每日行程（需先删除其活动）
+     */
+    @Modifying
+    @Query("DELETE FROM PlanDay d WHERE d.travelPlan.id = :travelPlanId")
+    int deleteByTravelPlanId(@Param("travelPlanId") Long travelPlanId);
+}
@@ -0,0 +1,48 @@
+package com.ai.travel.repository;
+
+import com.ai.travel.entity.PlanJob;
+import com.ai.travel.entity.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface PlanJobRepository extends JpaRepository<PlanJob, Long> {
+    
+    /**
+     * 根据任务ID和用户查找生成任务
+     */
+    Optional<PlanJob> findByIdAndUser(Long id, User user);
+    
+    /**
+     * 刷新本实例未结束任务的心跳
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PlanJob j SET j.heartbeatAt = :heartbeatAt WHERE j.owner = :owner AND j.status IN :statuses")
+    int touchJobs(@Param("owner") String owner,
+                  @Param("statuses") Collection<PlanJob.Status> statuses,
+                  @Param("heartbeatAt") LocalDateTime heartbeatAt);
+    
+    /**
+     * 将其他实例的、心跳已过期的指定状态任务批量标记为失败（处理该任务的实例已退出）
+     * 新增心跳列之前创建的任务没有心跳，按创建时间判断
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PlanJob j SET j.status = com.ai.travel.entity.PlanJob.Status.FAILED, j.errorMessage = :errorMessage, j.finishedAt = :finishedAt " +
+           "WHERE j.status IN :statuses AND (j.owner IS NULL OR j.owner <> :owner) " +
+           "AND COALESCE(j.heartbeatAt, j.createdAt) < :staleBefore")
+    int failStaleJobs(@Param("statuses") Collection<PlanJob.Status> statuses,
+                      @Param("owner") String owner,
+                      @Param("staleBefore") LocalDateTime staleBefore,
+                      @Param("errorMessage") String errorMessage,
+                      @Param("finishedAt") LocalDateTime finishedAt);
+}
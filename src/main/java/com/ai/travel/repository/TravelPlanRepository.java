@@ -2,11 +2,18 @@ package com.ai.travel.repository;
 
 import com.ai.travel.entity.TravelPlan;
 import com.ai.travel.entity.User;
+import com.ai.travel.util.CompressedJson;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,9 +21,24 @@ import java.util.Optional;
 public interface TravelPlanRepository extends JpaRepository<TravelPlan, Long> {
     
     /**
-     * 根据用户ID查找旅行计划
+     * 分页查询用户计划列表的第一页（按创建时间倒序），不读取计划数据
      */
-    List<TravelPlan> findByUserOrderByCreatedAtDesc(User user);
+    @Query("SELECT tp.id AS id, tp.destination AS destination, tp.duration AS duration, " +
+           "tp.travelRequest AS travelRequest, tp.createdAt AS createdAt FROM TravelPlan tp " +
+           "WHERE tp.user = :user ORDER BY tp.createdAt DESC, tp.id DESC")
+    List<TravelPlanSummary> findSummariesByUser(@Param("user") User user, Pageable pageable);
+    
+    /**
+     * 从游标位置(createdAt, id)之后继续查询用户计划列表，不读取计划数据
+     */
+    @Query("SELECT tp.id AS id, tp.destination AS destination, tp.duration AS duration, " +
+           "tp.travelRequest AS travelRequest, tp.createdAt AS createdAt FROM TravelPlan tp " +
+           "WHERE tp.user = :user AND (tp.createdAt < :createdAt OR (tp.createdAt = :createdAt AND tp.id < :id)) " +
+           "ORDER BY tp.createdAt DESC, tp.id DESC")
+    List<TravelPlanSummary> findSummariesByUserAfter(@Param("user") User user,
+                                                     @Param("createdAt") LocalDateTime createdAt,
+                                                     @Param("id") Long id,
+                                                     Pageable pageable);
     
     /**
      * 根据用户ID和目的地查找旅行计划
@@ -29,9 +51,80 @@ public interface TravelPlanRepository extends JpaRepository<TravelPlan, Long> {
     Optional<TravelPlan> findByIdAndUser(Long id, User user);
     
     /**
-     * 根据用户ID和旅行需求查找完全相同的旅行计划
+     * 判断旅行计划是否属于用户，不加载计划数据
+     */
+    boolean existsByIdAndUser(Long id, User user);
+    
+    /**
+     * 按旅行需求哈希查找用户完全相同需求的计划ID（最新的在前），只读取ID，不加载计划数据
+     * 同时比较原文以排除哈希碰撞
+     */
+    @Query("SELECT tp.id FROM TravelPlan tp WHERE tp.user = :user AND tp.travelRequestHash = :hash " +
+           "AND tp.travelRequest = :travelRequest ORDER BY tp.createdAt DESC, tp.id DESC")
+    List<Long> findIdsByUserAndTravelRequestHash(@Param("user") User user,
+                                                 @Param("hash") String hash,
+                                                 @Param("travelRequest") String travelRequest,
+                                                 Pageable pageable);
+    
+    /**
+     * 查找尚未计算旅行需求哈希的计划（用于回填）
+     */
+    @Query("SELECT tp.id AS id, tp.travelRequest AS travelRequest FROM TravelPlan tp " +
+           "WHERE tp.travelRequestHash IS NULL AND tp.travelRequest IS NOT NULL ORDER BY tp.id")
+    List<TravelRequestRow> findRowsWithoutTravelRequestHash(Pageable pageable);
+    
+    /**
+     * 按ID顺序分批读取AI生成计划的ID与旅行需求（用于构建近似重复索引）
+     * 兜底计划和无法判断来源的旧计划（fallback为null）不参与跨用户复用
+     */
+    @Query("SELECT tp.id AS id, tp.travelRequest AS travelRequest FROM TravelPlan tp " +
+           "WHERE tp.id > :afterId AND tp.travelRequest IS NOT NULL AND tp.fallback = false ORDER BY tp.id")
+    List<TravelRequestRow> findGeneratedTravelRequestRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * 写入旅行需求哈希
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TravelPlan tp SET tp.travelRequestHash = :hash WHERE tp.id = :id")
+    int updateTravelRequestHash(@Param("id") Long id, @Param("hash") String hash);
+    
+    /**
+     * 查找计划数据尚未压缩的计划（用于迁移）
+     */
+    @Query("SELECT tp.id AS id, tp.planData AS planData FROM TravelPlan tp " +
+           "WHERE tp.planDataCompressed IS NULL AND tp.planData IS NOT NULL ORDER BY tp.id")
+    List<PlanDataRow> findRowsWithUncompressedPlanData(Pageable pageable);
+    
+    /**
+     * 写入压缩后的计划数据并清空plan_data；不经过实体回调，不改变updated_at
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TravelPlan tp SET tp.planDataCompressed = :compressed, tp.planData = NULL " +
+           "WHERE tp.id = :id AND tp.planDataCompressed IS NULL")
+    int updateCompressedPlanData(@Param("id") Long id, @Param("compressed") CompressedJson compressed);
+    
+    /**
+     * 查询计划的每日行程是否已物化，不加载计划数据
+     */
+    @Query("SELECT tp.itineraryMaterialized FROM TravelPlan tp WHERE tp.id = :id")
+    Optional<Boolean> findItineraryMaterializedById(@Param("id") Long id);
+    
+    /**
+     * 加行锁读取计划（用于补建每日行程，并发的首次读取依次执行）
      */
-    List<TravelPlan> findByUserAndTravelRequestOrderByCreatedAtDesc(User user, String travelRequest);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT tp FROM TravelPlan tp WHERE tp.id = :id")
+    Optional<TravelPlan> findByIdForUpdate(@Param("id") Long id);
+    
+    /**
+     * 标记计划的每日行程已物化；不经过实体回调，不改变版本号与updated_at
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TravelPlan tp SET tp.itineraryMaterialized = true WHERE tp.id = :id")
+    int markItineraryMaterialized(@Param("id") Long id);
     
     /**
      * 统计用户创建的旅行计划数量
@@ -39,13 +132,95 @@ public interface TravelPlanRepository extends JpaRepository<TravelPlan, Long> {
     long countByUser(User user);
     
     /**
-     * 根据旅行需求内容查找相似的旅行计划（用于避免重复生成）
+     * 查找用户所有计划的ID与旅行需求（用于构建相似计划索引），不加载计划数据
      */
-    @Query("SELECT tp FROM TravelPlan tp WHERE tp.user = :user AND tp.travelRequest LIKE %:keyword% ORDER BY tp.createdAt DESC")
-    List<TravelPlan> findSimilarPlansByUserAndKeyword(@Param("user") User user, @Param("keyword") String keyword);
+    @Query("SELECT tp.id AS id, tp.travelRequest AS travelRequest FROM TravelPlan tp WHERE tp.user = :user")
+    List<TravelRequestRow> findTravelRequestRowsByUser(@Param("user") User user);
     
     /**
      * 查找用户最近创建的旅行计划
      */
-    Optional<TravelPlan> findFirstByUserOrderByCreatedAtDesc(User user);
+    Optional<TravelPlan> findFirstByUserOrderByCreatedAtDescIdDesc(User user);
+    
+    /**
+     * 查询计划的版本信息（用于ETag校验），不加载计划数据
+     */
+    @Query("SELECT tp.id AS id, tp.version AS version, tp.updatedAt AS updatedAt FROM TravelPlan tp " +
+           "WHERE tp.id = :id AND tp.user = :user")
+    Optional<PlanVersion> findVersionByIdAndUser(@Param("id") Long id, @Param("user") User user);
+    
+    /**
+     * 查询用户最近创建的计划的版本信息（用于ETag校验），排序与findFirstByUserOrderByCreatedAtDescIdDesc一致
+     */
+    @Query("SELECT tp.id AS id, tp.version AS version, tp.updatedAt AS updatedAt FROM TravelPlan tp " +
+           "WHERE tp.user = :user ORDER BY tp.createdAt DESC, tp.id DESC")
+    List<PlanVersion> findLatestVersionByUser(@Param("user") User user, Pageable pageable);
+    
+    /**
+     * 统计指定时间之后各目的地与天数组合的计划数量，按数量降序
+     */
+    @Query("SELECT tp.destination AS destination, tp.duration AS duration, COUNT(tp) AS planCount FROM TravelPlan tp " +
+           "WHERE tp.createdAt >= :since AND tp.destination <> '未知目的地' " +
+           "GROUP BY tp.destination, tp.duration ORDER BY COUNT(tp) DESC")
+    List<DestinationPopularity> findPopularDestinations(@Param("since") LocalDateTime since, Pageable pageable);
+    
+    /**
+     * 计划列表中的一项
+     */
+    interface TravelPlanSummary {
+        
+        Long getId();
+        
+        String getDestination();
+        
+        Integer getDuration();
+        
+        String getTravelRequest();
+        
+        LocalDateTime getCreatedAt();
+    }
+    
+    /**
+     * 计划的版本信息
+     */
+    interface PlanVersion {
+        
+        Long getId();
+        
+        Long getVersion();
+        
+        LocalDateTime getUpdatedAt();
+    }
+    
+    /**
+     * 计划ID与旅行需求
+     */
+    interface TravelRequestRow {
+        
+        Long getId();
+        
+        String getTravelRequest();
+    }
+    
+    /**
+     * 计划ID与未压缩的计划数据
+     */
+    interface PlanDataRow {
+        
+        Long getId();
+        
+        String getPlanData();
+    }
+    
+    /**
+     * 目的地与天数组合的热度
+     */
+    interface DestinationPopularity {
+        
+        String getDestination();
+        
+        Integer getDuration();
+        
+        long getPlanCount();
+    }
 }
\ No newline at end of file
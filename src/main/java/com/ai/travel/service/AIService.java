@@ -1,45 +1,457 @@
 package com.ai.travel.service;
 
+import com.ai.travel.exception.AiServiceOverloadedException;
+import com.ai.travel.exception.AiServiceUnavailableException;
+import com.ai.travel.util.TravelRequestNormalizer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.volcengine.ark.runtime.model.Usage;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionChoice;
 import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionRequest;
+import com.volcengine.ark.runtime.model.completion.chat.ChatCompletionResult;
 import com.volcengine.ark.runtime.model.completion.chat.ChatMessage;
 import com.volcengine.ark.runtime.model.completion.chat.ChatMessageRole;
 import com.volcengine.ark.runtime.service.ArkService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.reactivex.disposables.Disposable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Service
 public class AIService {
     
-    @Value("${doubao.api-key}")
-    private String apiKey;
+    private static final Logger logger = LoggerFactory.getLogger(AIService.class);
     
-    @Value("${doubao.base-url}")
-    private String baseUrl;
+    private static final String PLAN_SYSTEM_PROMPT = "你是一个专业的旅行规划师。请根据用户的旅行需求，生成一个详细、实用的旅行计划。" +
+            "计划应该包括：目的地、旅行天数、每日行程安排（包括时间、景点、活动、预算等）、总预算估算。" +
+            "请以JSON格式返回，包含以下字段：destination, duration, totalBudget, days（数组，包含day, date, title, activities数组）。" +
+            "activities数组包含：name, time, budget, description，其中name为具体的地名。" +
+            "请确保返回的数据结构清晰，便于前端解析。";
+    
+    private static final String SKELETON_SYSTEM_PROMPT = "你是一个专业的旅行规划师。请根据用户的旅行需求，先给出行程框架，不要展开具体活动。" +
+            "请只返回JSON，包含以下字段：destination, duration, totalBudget, days（数组，包含day, date, title）。" +
+            "title概括当天的主题与区域，各天之间不要重复。";
+    
+    private static final String DAY_SYSTEM_PROMPT = "你是一个专业的旅行规划师。请为旅行中的某一天安排具体活动。" +
+            "请只返回JSON，包含字段activities（数组），activities数组包含：name, time, budget, description，其中name为具体的地名。";
+    
+    private static final String CONTINUE_PROMPT = "输出因长度限制被截断。请紧接上文最后一个字符继续输出剩余的JSON，" +
+            "不要重复已输出的内容，不要添加任何说明或代码块标记。";
+    
+    private static final int SKELETON_MAX_TOKENS = 2000;
+    
+    // 每天生成时附带的行程框架的最大长度
+    private static final int MAX_OUTLINE_LENGTH = 2000;
+    
+    // 续写内容与已有内容重叠部分的最大检查长度，以及认定为重复的最小长度
+    private static final int OVERLAP_WINDOW = 200;
+    private static final int MIN_OVERLAP = 8;
+    
+    @Autowired
+    private ArkService arkService;
+    
+    @Autowired
+    private ThreadPoolTaskExecutor planDayExecutor;
+    
+    @Autowired
+    private DoubaoCallGuard doubaoCallGuard;
+    
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
+    @Autowired
+    private PlanJsonRepairer planJsonRepairer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private DestinationTemplateStore destinationTemplateStore;
     
     @Value("${doubao.model}")
     private String model;
     
+    @Value("${plan.fan-out.min-days:7}")
+    private int fanOutMinDays;
+    
+    @Value("${plan.fan-out.parallelism:4}")
+    private int fanOutParallelism;
+    
+    @Value("${plan.fan-out.day-max-tokens:800}")
+    private int dayMaxTokens;
+    
+    @Value("${plan.completion.base-tokens:400}")
+    private int baseTokens;
+    
+    @Value("${plan.completion.tokens-per-day:450}")
+    private int tokensPerDay;
+    
+    @Value("${plan.completion.max-tokens:4096}")
+    private int maxTokensCap;
+    
+    @Value("${plan.completion.max-continuations:3}")
+    private int maxContinuations;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
     /**
      * 调用豆包API生成旅行计划
+     * 天数较多的行程先生成框架再并发生成每天的活动，耗时取决于最慢的一天而不是所有天数之和
      * @param travelRequest 用户旅行需求
      * @return AI生成的旅行计划文本
      */
     public String generateTravelPlan(String travelRequest) {
-        ArkService arkService = ArkService.builder()
-                .apiKey(apiKey)
-                .baseUrl(baseUrl)
-                .build();
-
-        // 构建系统提示词
-        String systemPrompt = "你是一个专业的旅行规划师。请根据用户的旅行需求，生成一个详细、实用的旅行计划。" +
-                "计划应该包括：目的地、旅行天数、每日行程安排（包括时间、景点、活动、预算等）、总预算估算。" +
-                "请以JSON格式返回，包含以下字段：destination, duration, totalBudget, days（数组，包含day, date, title, activities数组）。" +
-                "activities数组包含：name, time, budget, description，其中name为具体的地名。" +
-                "请确保返回的数据结构清晰，便于前端解析。";
-
+        return generateTravelPlan(travelRequest, null);
+    }
+    
+    /**
+     * 调用豆包API生成旅行计划，并累计各轮调用实际消耗的token（含提示词与续写）
+     * @param travelRequest 用户旅行需求
+     * @param tokenUsage 累计token用量，可为null
+     * @return AI生成的旅行计划文本
+     */
+    public String generateTravelPlan(String travelRequest, LongAdder tokenUsage) {
+        Integer duration = TravelRequestNormalizer.canonicalize(travelRequest).duration();
+        if (duration != null && duration >= fanOutMinDays) {
+            String plan = generateTravelPlanByDay(travelRequest, tokenUsage);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        
+        return complete(buildChatRequest(PLAN_SYSTEM_PROMPT, "请为以下旅行需求生成计划：" + travelRequest,
+                planMaxTokens(duration)), tokenUsage);
+    }
+    
+    /**
+     * 以流式方式调用豆包API生成旅行计划，每收到一段内容即回调
+     * @param travelRequest 用户旅行需求
+     * @param onDelta 增量内容回调
+     * @return 拼接后的完整旅行计划文本
+     * @throws AiServiceOverloadedException 并发已达上限且排队超时
+     * @throws AiServiceUnavailableException 熔断打开、超时或调用失败
+     */
+    public String streamTravelPlan(String travelRequest, Consumer<String> onDelta) {
+        Integer duration = TravelRequestNormalizer.canonicalize(travelRequest).duration();
+        ChatCompletionRequest chatCompletionRequest = buildChatRequest(PLAN_SYSTEM_PROMPT,
+                "请为以下旅行需求生成计划：" + travelRequest, planMaxTokens(duration));
+        
+        // 与非流式调用共用并发限制与熔断保护，截止时间使用流式调用单独的配置
+        AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(chatCompletionRequest.getMaxTokens());
+        boolean success = false;
+        try {
+            String result = doubaoCallGuard.stream(permit.track(() -> readStream(chatCompletionRequest, onDelta)));
+            success = true;
+            return result;
+        } finally {
+            permit.release(success);
+        }
+    }
+    
+    /**
+     * 读取流式响应，每收到一段内容即回调，返回拼接后的完整内容
+     * 响应由OkHttp调度线程读取；等待线程因超时被中断时取消订阅，不再回调，停滞的读取由客户端读超时结束
+     */
+    private String readStream(ChatCompletionRequest chatCompletionRequest, Consumer<String> onDelta) {
+        StringBuilder content = new StringBuilder();
+        CompletableFuture<String> completed = new CompletableFuture<>();
+        Disposable subscription = arkService.streamChatCompletion(chatCompletionRequest)
+                .subscribe(chunk -> {
+                    if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+                        return;
+                    }
+                    Object delta = chunk.getChoices().get(0).getMessage().getContent();
+                    if (delta != null && !delta.toString().isEmpty()) {
+                        content.append(delta);
+                        onDelta.accept(delta.toString());
+                    }
+                }, completed::completeExceptionally, () -> completed.complete(content.toString()));
+        try {
+            return completed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("流式读取被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtimeException
+                    ? runtimeException : new CompletionException(cause);
+        } finally {
+            subscription.dispose();
+        }
+    }
+    
+    /**
+     * 两阶段生成：先生成包含每日主题的框架，再按并发上限并行生成每天的活动，最后合并为完整计划
+     * @return 合并后的计划JSON，框架生成失败时返回null
+     * @throws TaskRejectedException 按天生成的线程池已满
+     */
+    private String generateTravelPlanByDay(String travelRequest, LongAdder tokenUsage) {
+        ObjectNode skeleton = parseJsonObject(complete(buildChatRequest(SKELETON_SYSTEM_PROMPT,
+                "请为以下旅行需求生成行程框架：" + travelRequest, SKELETON_MAX_TOKENS), tokenUsage));
+        if (skeleton == null || !skeleton.path("days").isArray() || skeleton.path("days").isEmpty()) {
+            logger.warn("Plan skeleton unusable, falling back to single completion");
+            return null;
+        }
+        
+        ArrayNode days = (ArrayNode) skeleton.get("days");
+        String outline = buildOutline(skeleton);
+        
+        // 每条通道依次领取下一天，通道数即单个计划的并发上限
+        AtomicInteger nextDay = new AtomicInteger();
+        int lanes = Math.min(fanOutParallelism, days.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < lanes; i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    int index;
+                    while ((index = nextDay.getAndIncrement()) < days.size()) {
+                        if (days.get(index) instanceof ObjectNode day) {
+                            fillDayActivities(travelRequest, outline, day, tokenUsage);
+                        }
+                    }
+                }, planDayExecutor));
+            } catch (TaskRejectedException e) {
+                // 线程池已满：已提交的通道会继续领取剩余的天数，一条都没有时交由调用方返回503
+                if (futures.isEmpty()) {
+                    throw e;
+                }
+                logger.warn("Day fan-out started with {} of {} lanes, executor is full", futures.size(), lanes);
+                break;
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        
+        try {
+            return objectMapper.writeValueAsString(skeleton);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 生成某一天的活动并写入当天节点，失败时保留空的活动列表
+     */
+    private void fillDayActivities(String travelRequest, String outline, ObjectNode day, LongAdder tokenUsage) {
+        String userPrompt = "旅行需求：" + travelRequest + "\n行程框架：\n" + outline +
+                "\n请只安排第" + day.path("day").asInt() + "天（" + day.path("title").asText() + "）的活动。";
+        try {
+            ObjectNode result = parseJsonObject(complete(buildChatRequest(DAY_SYSTEM_PROMPT, userPrompt, dayMaxTokens), tokenUsage));
+            if (result != null && result.path("activities").isArray()) {
+                day.set("activities", result.get("activities"));
+                return;
+            }
+            logger.warn("Day {} activities unusable", day.path("day").asInt());
+        } catch (Exception e) {
+            logger.warn("Day {} generation failed: {}", day.path("day").asInt(), e.getMessage());
+        }
+        day.set("activities", objectMapper.createArrayNode());
+    }
+    
+    /**
+     * 将框架整理为每日主题列表，供每天的生成参考以避免重复；超过MAX_OUTLINE_LENGTH的部分截掉
+     */
+    private String buildOutline(ObjectNode skeleton) {
+        StringBuilder outline = new StringBuilder("目的地：").append(skeleton.path("destination").asText());
+        for (JsonNode day : skeleton.path("days")) {
+            outline.append("\n第").append(day.path("day").asInt()).append("天：").append(day.path("title").asText());
+        }
+        return outline.length() > MAX_OUTLINE_LENGTH ? outline.substring(0, MAX_OUTLINE_LENGTH) : outline.toString();
+    }
+    
+    /**
+     * 从AI返回的文本中截取并解析JSON对象
+     * @return 解析结果，无法解析时返回null
+     */
+    private ObjectNode parseJsonObject(String text) {
+        if (text == null) {
+            return null;
+        }
+        int start = text.indexOf('{');
+        int end = text.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(text.substring(start, end + 1));
+            return node instanceof ObjectNode objectNode ? objectNode : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 估算生成一个计划最多消耗的token数（提示词与输出，含全部续写轮次），用于预生成的token预算
+     * 分天生成失败时会再走一次单次生成，因此两者都计入
+     * @param travelRequest 旅行需求
+     */
+    public long estimatePlanTokens(String travelRequest) {
+        Integer duration = TravelRequestNormalizer.canonicalize(travelRequest).duration();
+        long tokens = worstCaseTokens(PLAN_SYSTEM_PROMPT + "请为以下旅行需求生成计划：" + travelRequest,
+                planMaxTokens(duration));
+        if (duration != null && duration >= fanOutMinDays) {
+            tokens += worstCaseTokens(SKELETON_SYSTEM_PROMPT + "请为以下旅行需求生成行程框架：" + travelRequest,
+                    SKELETON_MAX_TOKENS);
+            // 每天的每轮提示词都包含行程框架，框架长度不超过MAX_OUTLINE_LENGTH
+            tokens += duration * (worstCaseTokens(DAY_SYSTEM_PROMPT + "旅行需求：" + travelRequest, dayMaxTokens)
+                    + (long) MAX_OUTLINE_LENGTH * (1 + maxContinuations));
+        }
+        return tokens;
+    }
+    
+    /**
+     * 一次complete调用的最大token消耗：每轮输出不超过maxTokens，续写时已生成内容与续写指令会作为提示词再次发送
+     * 提示词按每个字符一个token估算（中文略高于实际）
+     */
+    private long worstCaseTokens(String prompt, int maxTokens) {
+        long total = 0;
+        for (int turn = 0; turn <= maxContinuations; turn++) {
+            long promptTokens = prompt.length() + (long) turn * maxTokens
+                    + (turn > 0 ? CONTINUE_PROMPT.length() : 0);
+            total += promptTokens + maxTokens;
+        }
+        return total;
+    }
+    
+    /**
+     * 按行程天数估算单次生成所需的maxTokens，未识别天数时按3天估算
+     */
+    private int planMaxTokens(Integer duration) {
+        int days = duration == null || duration <= 0 ? 3 : duration;
+        return Math.min(maxTokensCap, baseTokens + tokensPerDay * days);
+    }
+    
+    /**
+     * 发送聊天完成请求；若因长度限制被截断（finish_reason=length），把已生成的内容作为上文发起续写，
+     * 直到生成完整或达到续写次数上限，避免整段重新生成
+     * @throws AiServiceOverloadedException 并发已达上限且排队超时
+     * @throws AiServiceUnavailableException 熔断打开、超时或调用失败
+     */
+    private String complete(ChatCompletionRequest chatCompletionRequest, LongAdder tokenUsage) {
+        StringBuilder content = new StringBuilder();
+        ChatCompletionRequest request = chatCompletionRequest;
+        for (int turn = 0; ; turn++) {
+            ChatCompletionResult result = completeTurn(request);
+            recordUsage(result, turn, tokenUsage);
+            
+            ChatCompletionChoice choice = result.getChoices() == null || result.getChoices().isEmpty()
+                    ? null : result.getChoices().get(0);
+            if (choice == null) {
+                return content.toString();
+            }
+            Object text = choice.getMessage().getContent();
+            appendContinuation(content, text == null ? "" : text.toString(), turn > 0);
+            
+            if (!"length".equals(choice.getFinishReason())) {
+                return content.toString();
+            }
+            if (turn >= maxContinuations) {
+                logger.warn("Completion still truncated after {} continuations, {} chars generated",
+                        maxContinuations, content.length());
+                meterRegistry.counter("doubao.continuations", "result", "exhausted").increment();
+                return content.toString();
+            }
+            meterRegistry.counter("doubao.continuations", "result", "continued").increment();
+            request = buildContinuationRequest(chatCompletionRequest, content.toString());
+        }
+    }
+    
+    /**
+     * 在并发限制、截止时间与熔断保护下发送一轮聊天完成请求
+     */
+    private ChatCompletionResult completeTurn(ChatCompletionRequest chatCompletionRequest) {
+        AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(chatCompletionRequest.getMaxTokens());
+        boolean success = false;
+        try {
+            // 发送请求并获取响应；熔断或线程池已满时请求未发出，许可释放时不计入延迟样本
+            ChatCompletionResult result = doubaoCallGuard.call(
+                    permit.track(() -> arkService.createChatCompletion(chatCompletionRequest)));
+            success = true;
+            return result;
+        } finally {
+            permit.release(success);
+        }
+    }
+    
+    /**
+     * 续写请求：原始消息之后附上已生成的内容（assistant）与续写指令（user）
+     */
+    private ChatCompletionRequest buildContinuationRequest(ChatCompletionRequest original, String partial) {
+        List<ChatMessage> chatMessages = new ArrayList<>(original.getMessages());
+        chatMessages.add(ChatMessage.builder()
+                .role(ChatMessageRole.ASSISTANT)
+                .content(partial)
+                .build());
+        chatMessages.add(ChatMessage.builder()
+                .role(ChatMessageRole.USER)
+                .content(CONTINUE_PROMPT)
+                .build());
+        return buildChatRequest(chatMessages, original.getMaxTokens());
+    }
+    
+    /**
+     * 拼接续写内容：去掉开头的代码块标记，并去除与已有内容末尾重复的部分
+     */
+    private void appendContinuation(StringBuilder content, String text, boolean continuation) {
+        if (!continuation) {
+            content.append(text);
+            return;
+        }
+        String next = text.stripLeading();
+        if (next.startsWith("```")) {
+            int lineEnd = next.indexOf('\n');
+            next = lineEnd < 0 ? "" : next.substring(lineEnd + 1);
+        }
+        
+        int maxOverlap = Math.min(OVERLAP_WINDOW, Math.min(content.length(), next.length()));
+        for (int overlap = maxOverlap; overlap >= MIN_OVERLAP; overlap--) {
+            if (content.substring(content.length() - overlap).equals(next.substring(0, overlap))) {
+                next = next.substring(overlap);
+                break;
+            }
+        }
+        content.append(next);
+    }
+    
+    /**
+     * 记录每轮调用的token用量，并累计到调用方的用量中
+     */
+    private void recordUsage(ChatCompletionResult result, int turn, LongAdder tokenUsage) {
+        Usage usage = result.getUsage();
+        if (usage == null) {
+            return;
+        }
+        if (tokenUsage != null) {
+            tokenUsage.add(usage.getTotalTokens());
+        }
+        String turnTag = turn == 0 ? "initial" : "continuation";
+        meterRegistry.summary("doubao.tokens", "type", "prompt", "turn", turnTag).record(usage.getPromptTokens());
+        meterRegistry.summary("doubao.tokens", "type", "completion", "turn", turnTag).record(usage.getCompletionTokens());
+        logger.debug("Doubao turn {} usage: prompt={}, completion={}, total={}",
+                turn, usage.getPromptTokens(), usage.getCompletionTokens(), usage.getTotalTokens());
+    }
+    
+    /**
+     * 构建聊天完成请求
+     */
+    private ChatCompletionRequest buildChatRequest(String systemPrompt, String userPrompt, int maxTokens) {
         List<ChatMessage> chatMessages = new ArrayList<>();
         
         // 添加系统消息
@@ -52,33 +464,24 @@ public class AIService {
         // 添加用户消息
         ChatMessage userMessage = ChatMessage.builder()
                 .role(ChatMessageRole.USER)
-                .content("请为以下旅行需求生成计划：" + travelRequest)
+                .content(userPrompt)
                 .build();
         chatMessages.add(userMessage);
 
+        return buildChatRequest(chatMessages, maxTokens);
+    }
+    
+    /**
+     * 根据消息列表构建聊天完成请求
+     */
+    private ChatCompletionRequest buildChatRequest(List<ChatMessage> chatMessages, int maxTokens) {
         // 创建聊天完成请求
-        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+        return ChatCompletionRequest.builder()
                 .model(model)
                 .messages(chatMessages)
                 .temperature(0.7)
-                .maxTokens(2000)
+                .maxTokens(maxTokens)
                 .build();
-
-        try {
-            // 发送请求并获取响应
-            String response = arkService.createChatCompletion(chatCompletionRequest)
-                    .getChoices()
-                    .stream()
-                    .findFirst()
-                    .map(choice -> choice.getMessage().getContent())
-                    .orElse("").toString();
-            
-            return response;
-        } catch (Exception e) {
-            throw new RuntimeException("调用豆包API失败: " + e.getMessage(), e);
-        } finally {
-            arkService.shutdownExecutor();
-        }
     }
     
     /**
@@ -88,167 +491,48 @@ public class AIService {
      * @return 解析后的旅行计划数据
      */
     public String parseAIPlan(String aiResponse, String travelRequest) {
-        try {
-            // 尝试解析JSON，如果失败则返回模拟数据
-            if (aiResponse.trim().startsWith("{") && aiResponse.trim().endsWith("}")) {
-                return aiResponse;
-            } else {
-                // 如果AI返回的不是标准JSON，返回模拟数据
-                return generateMockPlan(travelRequest);
-            }
-        } catch (Exception e) {
-            return generateMockPlan(travelRequest);
+        return parsePlan(aiResponse, travelRequest).planData();
+    }
+    
+    /**
+     * 解析AI返回的内容：先提取并修复JSON，仍无法使用时才返回模拟数据
+     * @param aiResponse AI返回的文本
+     * @param travelRequest 原始旅行需求
+     * @return 解析结果
+     */
+    public ParsedPlan parsePlan(String aiResponse, String travelRequest) {
+        PlanJsonRepairer.RepairResult result = planJsonRepairer.repair(aiResponse);
+        if (result.valid()) {
+            return new ParsedPlan(result.json(), false, result.repairs(), result.document());
+        }
+        return ParsedPlan.fallback(generateMockPlan(travelRequest));
+    }
+    
+    /**
+     * AI返回内容的解析结果
+     * @param planData 可保存的计划JSON
+     * @param fallback 是否为兜底的模拟计划
+     * @param repairs 对AI返回内容执行过的修复
+     * @param document 已解析的计划树与摘要，为null时由使用方自行解析
+     */
+    public record ParsedPlan(String planData, boolean fallback, List<String> repairs,
+                             PlanStreamParser.PlanDocument document) {
+        
+        public ParsedPlan(String planData, boolean fallback, List<String> repairs) {
+            this(planData, fallback, repairs, null);
+        }
+        
+        public static ParsedPlan fallback(String planData) {
+            return new ParsedPlan(planData, true, List.of());
         }
     }
     
     /**
      * 生成模拟旅行计划数据
      * @param travelRequest 旅行需求
-     * @return 模拟的旅行计划JSON
-     */
-    private String generateMockPlan(String travelRequest) {
-        // 根据旅行需求生成不同的模拟数据
-        if (travelRequest.contains("上海") || travelRequest.toLowerCase().contains("shanghai")) {
-            return """
-            {
-                "destination": "上海",
-                "duration": 3,
-                "totalBudget": 2800,
-                "days": [
-                    {
-                        "day": 1,
-                        "date": "2024-01-15",
-                        "title": "外滩与陆家嘴",
-                        "activities": [
-                            {
-                                "name": "外滩",
-                                "time": "09:00-11:00",
-                                "budget": 0,
-                                "description": "欣赏万国建筑博览群，感受上海的历史韵味"
-                            },
-                            {
-                                "name": "东方明珠",
-                                "time": "11:30-13:30",
-                                "budget": 120,
-                                "description": "登塔俯瞰上海全景，体验城市地标"
-                            },
-                            {
-                                "name": "南京路步行街",
-                                "time": "14:00-17:00",
-                                "budget": 200,
-                                "description": "购物与品尝美食，体验繁华商业街"
-                            }
-                        ]
-                    },
-                    {
-                        "day": 2,
-                        "date": "2024-01-16",
-                        "title": "迪士尼乐园",
-                        "activities": [
-                            {
-                                "name": "上海迪士尼",
-                                "time": "09:00-21:00",
-                                "budget": 399,
-                                "description": "全天游玩迪士尼主题乐园，体验童话世界"
-                            }
-                        ]
-                    },
-                    {
-                        "day": 3,
-                        "date": "2024-01-17",
-                        "title": "文化探索",
-                        "activities": [
-                            {
-                                "name": "豫园",
-                                "time": "09:00-11:30",
-                                "budget": 40,
-                                "description": "游览古典园林，品尝城隍庙小吃"
-                            },
-                            {
-                                "name": "田子坊",
-                                "time": "14:00-17:00",
-                                "budget": 150,
-                                "description": "探索文艺小巷，感受创意文化"
-                            }
-                        ]
-                    }
-                ]
-            }
-            """;
-        } else {
-            // 默认北京计划
-            return """
-            {
-                "destination": "北京",
-                "duration": 3,
-                "totalBudget": 2500,
-                "days": [
-                    {
-                        "day": 1,
-                        "date": "2024-01-15",
-                        "title": "故宫与天安门",
-                        "activities": [
-                            {
-                                "name": "天安门广场",
-                                "time": "09:00-10:30",
-                                "budget": 0,
-                                "description": "观看升旗仪式，游览广场"
-                            },
-                            {
-                                "name": "故宫博物院",
-                                "time": "10:30-16:00",
-                                "budget": 60,
-                                "description": "参观明清皇宫建筑群"
-                            },
-                            {
-                                "name": "王府井大街",
-                                "time": "18:00-20:00",
-                                "budget": 150,
-                                "description": "品尝北京小吃，购物"
-                            }
-                        ]
-                    },
-                    {
-                        "day": 2,
-                        "date": "2024-01-16",
-                        "title": "长城一日游",
-                        "activities": [
-                            {
-                                "name": "八达岭长城",
-                                "time": "08:00-15:00",
-                                "budget": 45,
-                                "description": "攀登长城，欣赏壮丽景色"
-                            },
-                            {
-                                "name": "明十三陵",
-                                "time": "15:30-17:30",
-                                "budget": 30,
-                                "description": "参观明代皇家陵墓"
-                            }
-                        ]
-                    },
-                    {
-                        "day": 3,
-                        "date": "2024-01-17",
-                        "title": "胡同文化与颐和园",
-                        "activities": [
-                            {
-                                "name": "什刹海胡同",
-                                "time": "09:00-11:30",
-                                "budget": 80,
-                                "description": "乘坐三轮车游览老北京胡同"
-                            },
-                            {
-                                "name": "颐和园",
-                                "time": "13:00-17:00",
-                                "budget": 30,
-                                "description": "游览皇家园林，昆明湖泛舟"
-                            }
-                        ]
-                    }
-                ]
-            }
-            """;
-        }
+     * @return 与需求中目的地对应的参考计划JSON
+     */
+    public String generateMockPlan(String travelRequest) {
+        return destinationTemplateStore.findPlan(travelRequest);
     }
-}
\ No newline at end of file
+}
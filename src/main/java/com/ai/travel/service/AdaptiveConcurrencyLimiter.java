@@ -0,0 +1,259 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.AiServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 发往豆包的自适应并发限制（AIMD）
+ * 调用延迟接近长期平均水平时每轮并发上限加一，延迟明显升高或调用失败时按比例收缩；
+ * 延迟按请求的maxTokens归一化为每token耗时，分天生成的短调用与完整计划的长调用共用同一基线而不互相干扰；
+ * 超出上限的请求短暂排队，排队满或等待超时后立即拒绝；
+ * 许可在实际调用结束后才释放，调用方超时返回时仍在进行的调用继续占用并发；未真正发出的调用不参与调整上限
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int maxQueueSize;
+    private final Duration queueTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    // 长期平均的每token延迟(纳秒)，作为判断延迟升高的基线
+    private double longLatency;
+
+    private final Counter rejectedCounter;
+
+    public AdaptiveConcurrencyLimiter(@Value("${doubao.limiter.initial-limit:16}") int initialLimit,
+                                      @Value("${doubao.limiter.min-limit:2}") int minLimit,
+                                      @Value("${doubao.limiter.max-limit:128}") int maxLimit,
+                                      @Value("${doubao.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${doubao.limiter.latency-tolerance:2.0}") double latencyTolerance,
+                                      @Value("${doubao.limiter.max-queue-size:32}") int maxQueueSize,
+                                      @Value("${doubao.limiter.queue-timeout:2s}") Duration queueTimeout,
+                                      MeterRegistry meterRegistry) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.maxQueueSize = maxQueueSize;
+        this.queueTimeout = queueTimeout;
+
+        this.rejectedCounter = Counter.builder("doubao.limiter.rejected")
+                .description("因并发上限被拒绝的调用数")
+                .register(meterRegistry);
+        Gauge.builder("doubao.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("当前并发上限")
+                .register(meterRegistry);
+        Gauge.builder("doubao.limiter.in-flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("正在进行的调用数")
+                .register(meterRegistry);
+        Gauge.builder("doubao.limiter.queue", this, AdaptiveConcurrencyLimiter::getWaiting)
+                .description("排队等待的调用数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取一个调用许可，调用方结束时必须调用{@link Permit#release(boolean)}
+     * @param maxTokens 本次调用请求的maxTokens，用于归一化延迟
+     * @throws AiServiceOverloadedException 排队已满或等待超时
+     */
+    public Permit acquire(int maxTokens) {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= maxQueueSize) {
+                    rejectedCounter.increment();
+                    throw new AiServiceOverloadedException("当前生成请求过多，请稍后重试");
+                }
+
+                long remaining = queueTimeout.toNanos();
+                waiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            rejectedCounter.increment();
+                            throw new AiServiceOverloadedException("当前生成请求过多，请稍后重试");
+                        }
+                        remaining = permitReleased.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AiServiceOverloadedException("等待调用许可时被中断");
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), Math.max(1, maxTokens));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可并根据本次调用结果调整并发上限
+     * @param startTime 获取许可的时间
+     * @param maxTokens 调用请求的maxTokens
+     * @param success 调用是否成功
+     */
+    private void release(long startTime, int maxTokens, boolean success) {
+        double latency = (double) (System.nanoTime() - startTime) / maxTokens;
+        lock.lock();
+        try {
+            int concurrency = inFlight;
+            inFlight--;
+
+            if (!success) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else {
+                longLatency = longLatency == 0 ? latency : longLatency * 0.95 + latency * 0.05;
+                if (latency > longLatency * latencyTolerance) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                } else if (concurrency * 2 >= limit) {
+                    // 只有并发确实接近上限时才放大，避免低负载时上限无限增长
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可但不调整并发上限（调用未真正发出，如熔断打开或调用线程池已满）
+     */
+    private void releaseWithoutSample() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一次调用的许可；同一许可下可能有多次实际调用（对冲请求），全部结束且调用方已释放后才归还
+     */
+    public final class Permit {
+
+        private final long startTime;
+        private final int maxTokens;
+        private int running;
+        private boolean started;
+        private boolean closed;
+        private boolean success;
+
+        private Permit(long startTime, int maxTokens) {
+            this.startTime = startTime;
+            this.maxTokens = maxTokens;
+        }
+
+        /**
+         * 包装实际调用，记录调用的开始与结束；调用方已释放许可后不再发起新的调用
+         */
+        public <T> Supplier<T> track(Supplier<T> call) {
+            return () -> {
+                if (!begin()) {
+                    throw new IllegalStateException("调用许可已释放");
+                }
+                try {
+                    return call.get();
+                } finally {
+                    end();
+                }
+            };
+        }
+
+        /**
+         * 调用方不再等待时释放；仍有调用在进行时推迟到最后一个调用结束
+         * @param success 调用方是否拿到了结果
+         */
+        public void release(boolean success) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                this.success = success;
+                if (running > 0) {
+                    return;
+                }
+            }
+            returnPermit();
+        }
+
+        private synchronized boolean begin() {
+            if (closed) {
+                return false;
+            }
+            running++;
+            started = true;
+            return true;
+        }
+
+        private void end() {
+            synchronized (this) {
+                running--;
+                if (!closed || running > 0) {
+                    return;
+                }
+            }
+            returnPermit();
+        }
+
+        private void returnPermit() {
+            if (started) {
+                AdaptiveConcurrencyLimiter.this.release(startTime, maxTokens, success);
+            } else {
+                releaseWithoutSample();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.ai.travel.service;
+
+import com.ai.travel.util.TravelRequestNormalizer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 目的地兜底计划模板库
+ * 启动时从plan-templates资源加载各目的地的参考计划并预先序列化为字节，
+ * 按TravelRequestNormalizer识别出的已知目的地（中文名、别称、拼音或英文名）取模板，AI不可用时直接返回
+ */
+@Component
+public class DestinationTemplateStore {
+
+    private static final String DESTINATIONS_RESOURCE = "plan-templates/destinations.json";
+
+    private static final String GENERIC_RESOURCE = "plan-templates/generic.json";
+
+    private static final String UNKNOWN_DESTINATION = "未知目的地";
+
+    // 通用模板中目的地取值的占位符，序列化后按此切分
+    private static final String DESTINATION_PLACEHOLDER = "\u0000destination\u0000";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, byte[]> templates = new HashMap<>();
+
+    private final byte[] genericPrefix;
+
+    private final byte[] genericSuffix;
+
+    public DestinationTemplateStore() {
+        for (JsonNode template : readResource(DESTINATIONS_RESOURCE)) {
+            templates.put(template.path("plan").path("destination").asText(), serialize(template.get("plan")));
+        }
+
+        ObjectNode generic = (ObjectNode) readResource(GENERIC_RESOURCE);
+        generic.put("destination", DESTINATION_PLACEHOLDER);
+        byte[] genericBytes = serialize(generic);
+        byte[] placeholder = serialize(objectMapper.getNodeFactory().textNode(DESTINATION_PLACEHOLDER));
+        int index = indexOf(genericBytes, placeholder);
+        this.genericPrefix = Arrays.copyOfRange(genericBytes, 0, index);
+        this.genericSuffix = Arrays.copyOfRange(genericBytes, index + placeholder.length, genericBytes.length);
+    }
+
+    /**
+     * 查找与旅行需求匹配的模板计划
+     * @param travelRequest 旅行需求
+     * @return 计划JSON的UTF-8字节（多次调用共享，调用方不得修改），未识别到已知目的地时返回通用计划
+     */
+    public byte[] findPlanBytes(String travelRequest) {
+        String destination = TravelRequestNormalizer.findDestination(travelRequest);
+        byte[] template = destination != null ? templates.get(destination) : null;
+        if (template != null) {
+            return template;
+        }
+
+        byte[] destinationBytes = serialize(objectMapper.getNodeFactory()
+                .textNode(destination != null ? destination : UNKNOWN_DESTINATION));
+        byte[] plan = new byte[genericPrefix.length + destinationBytes.length + genericSuffix.length];
+        System.arraycopy(genericPrefix, 0, plan, 0, genericPrefix.length);
+        System.arraycopy(destinationBytes, 0, plan, genericPrefix.length, destinationBytes.length);
+        System.arraycopy(genericSuffix, 0, plan, genericPrefix.length + destinationBytes.length, genericSuffix.length);
+        return plan;
+    }
+
+    /**
+     * 查找与旅行需求匹配的模板计划
+     * @param travelRequest 旅行需求
+     * @return 计划JSON
+     */
+    public String findPlan(String travelRequest) {
+        return new String(findPlanBytes(travelRequest), StandardCharsets.UTF_8);
+    }
+
+    private JsonNode readResource(String path) {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return objectMapper.readTree(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载计划模板失败: " + path, e);
+        }
+    }
+
+    private byte[] serialize(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int indexOf(byte[] source, byte[] target) {
+        outer:
+        for (int i = 0; i <= source.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (source[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new IllegalStateException("通用计划模板缺少目的地占位符");
+    }
+}
@@ -0,0 +1,334 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.AiServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 豆包调用的容错保护：单次调用截止时间、熔断器以及可选的对冲请求
+ * 熔断器在最近调用的失败率或慢调用率超过阈值时打开，打开期间直接拒绝调用，由调用方返回兜底计划；
+ * 超过截止时间或已有结果时中断仍在进行的调用；调用线程池使用虚拟线程，阻塞在socket读取的同步HTTP请求被中断时连接随之关闭，
+ * 不再占用线程和token（流式调用由调用方在中断时取消订阅）
+ */
+@Component
+public class DoubaoCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(DoubaoCallGuard.class);
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final Duration deadline;
+    private final Duration streamDeadline;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration slowCallThreshold;
+    private final double slowCallRateThreshold;
+    private final Duration openDuration;
+    private final boolean hedgeEnabled;
+    private final int hedgeMinSamples;
+
+    // 熔断器滑动窗口：0成功、1失败、2慢调用
+    private final byte[] outcomes;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInProgress;
+
+    // 最近成功的非流式调用的耗时，用于计算对冲延迟(p95)
+    private final long[] latencies = new long[200];
+    private int latencyIndex;
+    private int latencyCount;
+
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final Counter timeoutCounter;
+    private final Counter rejectedCounter;
+    private final Counter hedgeFiredCounter;
+    private final Counter hedgeWonCounter;
+
+    public DoubaoCallGuard(@Qualifier("doubaoCallExecutor") ThreadPoolTaskExecutor executor,
+                           @Value("${doubao.resilience.deadline:60s}") Duration deadline,
+                           @Value("${doubao.resilience.stream-deadline:170s}") Duration streamDeadline,
+                           @Value("${doubao.resilience.breaker.window-size:20}") int windowSize,
+                           @Value("${doubao.resilience.breaker.minimum-calls:10}") int minimumCalls,
+                           @Value("${doubao.resilience.breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                           @Value("${doubao.resilience.breaker.slow-call-threshold:30s}") Duration slowCallThreshold,
+                           @Value("${doubao.resilience.breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+                           @Value("${doubao.resilience.breaker.open-duration:30s}") Duration openDuration,
+                           @Value("${doubao.resilience.hedge.enabled:false}") boolean hedgeEnabled,
+                           @Value("${doubao.resilience.hedge.min-samples:20}") int hedgeMinSamples,
+                           MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.deadline = deadline;
+        this.streamDeadline = streamDeadline;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThreshold = slowCallThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = openDuration;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.outcomes = new byte[windowSize];
+
+        this.successCounter = callCounter(meterRegistry, "success");
+        this.failureCounter = callCounter(meterRegistry, "failure");
+        this.timeoutCounter = callCounter(meterRegistry, "timeout");
+        this.rejectedCounter = callCounter(meterRegistry, "rejected");
+        this.hedgeFiredCounter = Counter.builder("doubao.hedge").tag("result", "fired").register(meterRegistry);
+        this.hedgeWonCounter = Counter.builder("doubao.hedge").tag("result", "won").register(meterRegistry);
+        Gauge.builder("doubao.breaker.state", this, guard -> guard.currentState().ordinal())
+                .description("熔断器状态：0关闭、1打开、2半开")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在保护下执行一次豆包调用
+     * @param call 实际调用
+     * @return 调用结果
+     * @throws AiServiceUnavailableException 熔断打开、超过截止时间或调用失败
+     */
+    public <T> T call(Supplier<T> call) {
+        return guard(call, hedgeEnabled, deadline, true);
+    }
+    
+    /**
+     * 在保护下执行一次流式豆包调用；流式调用会边接收边回调，不能对冲
+     * 使用单独的截止时间（略短于SSE超时）；整段流的耗时取决于输出长度，只计入熔断的成败，不作为对冲与慢调用的延迟样本
+     * @param call 实际调用，在调用线程池中执行，返回前完成全部读取
+     * @return 调用结果
+     * @throws AiServiceUnavailableException 熔断打开、超过截止时间或调用失败
+     */
+    public <T> T stream(Supplier<T> call) {
+        return guard(call, false, streamDeadline, false);
+    }
+    
+    /**
+     * @param sampleLatency 是否把本次耗时计入对冲延迟与慢调用统计
+     */
+    private <T> T guard(Supplier<T> call, boolean hedge, Duration callDeadline, boolean sampleLatency) {
+        if (!acquirePermission()) {
+            rejectedCounter.increment();
+            throw new AiServiceUnavailableException("豆包服务暂时不可用（熔断中）");
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future = null;
+        try {
+            future = execute(call, hedge);
+            T result = future.get(callDeadline.toMillis(), TimeUnit.MILLISECONDS);
+            long elapsed = System.nanoTime() - start;
+            recordSuccess(sampleLatency ? elapsed : -1);
+            successCounter.increment();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            recordFailure();
+            timeoutCounter.increment();
+            throw new AiServiceUnavailableException("调用豆包API超时", e);
+        } catch (ExecutionException e) {
+            recordFailure();
+            failureCounter.increment();
+            Throwable cause = e.getCause();
+            throw new AiServiceUnavailableException("调用豆包API失败: " + cause.getMessage(), cause);
+        } catch (TaskRejectedException e) {
+            releaseTrial();
+            rejectedCounter.increment();
+            throw new AiServiceUnavailableException("豆包调用线程池已满", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            releaseTrial();
+            throw new AiServiceUnavailableException("调用豆包API被中断", e);
+        }
+    }
+
+    /**
+     * 发起调用；开启对冲时，若首个请求在p95耗时内未返回则再发起一次，取先成功的结果
+     * 返回的future完成（包括被取消）后，中断所有仍在进行的请求
+     */
+    private <T> CompletableFuture<T> execute(Supplier<T> call, boolean hedge) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<Future<?>> attempts = new CopyOnWriteArrayList<>();
+        Runnable attempt = () -> {
+            try {
+                result.complete(call.get());
+            } catch (Throwable t) {
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(t);
+                }
+            }
+        };
+        attempts.add(executor.submit(attempt));
+        result.whenComplete((value, error) -> attempts.forEach(running -> running.cancel(true)));
+
+        long hedgeDelay = hedge ? p95LatencyMillis() : -1;
+        if (hedgeDelay > 0) {
+            CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                pending.incrementAndGet();
+                try {
+                    attempts.add(executor.submit(() -> {
+                        try {
+                            if (result.complete(call.get())) {
+                                hedgeWonCounter.increment();
+                            }
+                        } catch (Throwable t) {
+                            if (pending.decrementAndGet() == 0) {
+                                result.completeExceptionally(t);
+                            }
+                        }
+                    }));
+                    // 添加之前主请求可能已经完成
+                    if (result.isDone()) {
+                        attempts.forEach(running -> running.cancel(true));
+                    }
+                    hedgeFiredCounter.increment();
+                } catch (TaskRejectedException e) {
+                    if (pending.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private synchronized boolean acquirePermission() {
+        State current = currentState();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.HALF_OPEN && !trialInProgress) {
+            trialInProgress = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized State currentState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+            state = State.HALF_OPEN;
+            trialInProgress = false;
+        }
+        return state;
+    }
+
+    /**
+     * @param elapsedNanos 调用耗时，小于0表示不计入延迟样本（流式调用）
+     */
+    private synchronized void recordSuccess(long elapsedNanos) {
+        if (elapsedNanos >= 0) {
+            latencies[latencyIndex] = elapsedNanos;
+            latencyIndex = (latencyIndex + 1) % latencies.length;
+            latencyCount = Math.min(latencyCount + 1, latencies.length);
+        }
+
+        boolean slow = elapsedNanos >= slowCallThreshold.toNanos();
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                open();
+            } else {
+                close();
+            }
+            return;
+        }
+        recordOutcome(slow ? (byte) 2 : (byte) 0);
+    }
+
+    private synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        recordOutcome((byte) 1);
+    }
+
+    private synchronized void releaseTrial() {
+        trialInProgress = false;
+    }
+
+    private void recordOutcome(byte outcome) {
+        outcomes[outcomeIndex] = outcome;
+        outcomeIndex = (outcomeIndex + 1) % windowSize;
+        outcomeCount = Math.min(outcomeCount + 1, windowSize);
+        if (state != State.CLOSED || outcomeCount < minimumCalls) {
+            return;
+        }
+
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < outcomeCount; i++) {
+            if (outcomes[i] == 1) {
+                failures++;
+            } else if (outcomes[i] == 2) {
+                slowCalls++;
+            }
+        }
+        if ((double) failures / outcomeCount >= failureRateThreshold
+                || (double) slowCalls / outcomeCount >= slowCallRateThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        if (state != State.OPEN) {
+            logger.warn("Doubao circuit breaker opened");
+        }
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInProgress = false;
+    }
+
+    private void close() {
+        logger.info("Doubao circuit breaker closed");
+        state = State.CLOSED;
+        outcomeIndex = 0;
+        outcomeCount = 0;
+        trialInProgress = false;
+    }
+
+    private synchronized long p95LatencyMillis() {
+        if (latencyCount < hedgeMinSamples) {
+            return -1;
+        }
+        long[] samples = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(samples);
+        return TimeUnit.NANOSECONDS.toMillis(samples[(int) Math.ceil(samples.length * 0.95) - 1]);
+    }
+
+    private static Counter callCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("doubao.calls")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.Expense;
+import com.ai.travel.repository.ExpenseRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 消费记录ID从自增列改为序列后，将序列推进到已有记录的最大ID之后
+ * 在Bean初始化阶段执行，早于Web服务开始接收请求，避免新分配的ID与已有记录冲突
+ */
+@Component
+public class ExpenseIdSequenceAligner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpenseIdSequenceAligner.class);
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @PostConstruct
+    public void align() {
+        // 多留一段，无论序列值被当作号段的起点还是终点都不会与已有ID重叠
+        expenseRepository.alignIdSequence(Expense.ID_ALLOCATION_SIZE + 1L);
+        logger.info("Expense id sequence aligned with existing rows");
+    }
+}
@@ -0,0 +1,58 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.ExpenseRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 为新增expense_rollups表之前已有消费记录的计划生成消费汇总
+ * 启动后按计划ID顺序分批执行，每个计划在单独的事务中重建，已有汇总的计划不再被查询到，重启后可继续；
+ * 单个计划重建失败只记录日志，不影响其他计划和应用启动
+ */
+@Component
+public class ExpenseRollupBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpenseRollupBackfill.class);
+
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Value("${expense.rollup.backfill-batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long afterId = 0;
+        int total = 0;
+        int failed = 0;
+        List<Long> travelPlanIds;
+        do {
+            travelPlanIds = expenseRollupRepository.findTravelPlanIdsWithoutRollupsAfter(afterId, PageRequest.of(0, batchSize));
+            for (Long travelPlanId : travelPlanIds) {
+                afterId = travelPlanId;
+                try {
+                    expenseService.rebuildRollups(travelPlanId);
+                    total++;
+                } catch (RuntimeException e) {
+                    failed++;
+                    logger.error("Failed to backfill expense rollups for plan {}", travelPlanId, e);
+                }
+            }
+        } while (travelPlanIds.size() == batchSize);
+
+        if (total > 0 || failed > 0) {
+            logger.info("Backfilled expense rollups for {} plans, {} failed", total, failed);
+        }
+    }
+}
@@ -1,29 +1,61 @@
 package com.ai.travel.service;
 
 import com.ai.travel.entity.Expense;
+import com.ai.travel.entity.ExpenseRollup;
 import com.ai.travel.entity.TravelPlan;
 import com.ai.travel.entity.User;
 import com.ai.travel.repository.ExpenseRepository;
+import com.ai.travel.repository.ExpenseRollupRepository;
 import com.ai.travel.repository.TravelPlanRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class ExpenseService {
     
+    // 未填写类别时使用的类别
+    public static final String DEFAULT_CATEGORY = "其他";
+    
     @Autowired
     private ExpenseRepository expenseRepository;
     
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+    
     @Autowired
     private TravelPlanRepository travelPlanRepository;
     
+    @Value("${expense.batch.max-size:500}")
+    private int maxBatchSize;
+    
+    /**
+     * 批量添加时的一条消费记录
+     */
+    public record NewExpense(Integer dayNumber, String item, BigDecimal amount, String category) {
+    }
+    
+    private record RollupKey(Integer dayNumber, String category) {
+    }
+    
     /**
-     * 添加消费记录
+     * 一个汇总行的金额与笔数变化
      */
+    record RollupDelta(Integer dayNumber, String category, BigDecimal amount, long count) {
+    }
+    
+    /**
+     * 添加消费记录，同时累加消费汇总
+     */
+    @Transactional
     public Expense addExpense(User user, Long travelPlanId, Integer dayNumber, 
                              String item, BigDecimal amount, String category) {
         // 验证旅行计划属于当前用户
@@ -31,24 +63,125 @@ public class ExpenseService {
         if (travelPlan.isEmpty()) {
             throw new RuntimeException("旅行计划不存在或无权访问");
         }
+        // 第0天用于整个计划的汇总行
+        if (dayNumber == null || dayNumber <= ExpenseRollup.ALL_DAYS) {
+            throw new RuntimeException("天数必须大于0");
+        }
         
-        Expense expense = new Expense(travelPlan.get(), dayNumber, item, amount, category);
-        return expenseRepository.save(expense);
+        Expense expense = new Expense(travelPlan.get(), dayNumber, item, amount, categoryOf(category));
+        Expense savedExpense = expenseRepository.save(expense);
+        updateRollups(travelPlanId, List.of(savedExpense), false);
+        return savedExpense;
     }
     
     /**
-     * 删除消费记录
+     * 批量添加同一旅行计划的消费记录，只验证一次计划归属；
+     * 记录与汇总在同一事务中写入，插入按hibernate.jdbc.batch_size合并为批处理语句
+     * @return 保存后的消费记录
      */
+    @Transactional
+    public List<Expense> addExpenses(User user, Long travelPlanId, List<NewExpense> newExpenses) {
+        if (newExpenses == null || newExpenses.isEmpty()) {
+            throw new IllegalArgumentException("消费记录不能为空");
+        }
+        if (newExpenses.size() > maxBatchSize) {
+            throw new IllegalArgumentException("单次最多添加" + maxBatchSize + "条消费记录");
+        }
+        for (NewExpense newExpense : newExpenses) {
+            if (newExpense.dayNumber() == null || newExpense.dayNumber() <= ExpenseRollup.ALL_DAYS) {
+                throw new IllegalArgumentException("天数必须大于0");
+            }
+            if (newExpense.item() == null || newExpense.item().isBlank() || newExpense.amount() == null) {
+                throw new IllegalArgumentException("消费项目和金额不能为空");
+            }
+        }
+        requireOwnedPlan(user, travelPlanId);
+        
+        // 只需外键，不加载计划数据
+        TravelPlan travelPlan = travelPlanRepository.getReferenceById(travelPlanId);
+        List<Expense> expenses = new ArrayList<>(newExpenses.size());
+        for (NewExpense newExpense : newExpenses) {
+            expenses.add(new Expense(travelPlan, newExpense.dayNumber(), newExpense.item(),
+                    newExpense.amount(), categoryOf(newExpense.category())));
+        }
+        List<Expense> savedExpenses = expenseRepository.saveAll(expenses);
+        updateRollups(travelPlanId, savedExpenses, false);
+        return savedExpenses;
+    }
+    
+    /**
+     * 删除消费记录，同时扣减消费汇总
+     */
+    @Transactional
     public void deleteExpense(User user, Long expenseId) {
         // 验证消费记录属于当前用户
         Optional<Expense> expense = expenseRepository.findById(expenseId);
         if (expense.isPresent() && expense.get().getTravelPlan().getUser().getId().equals(user.getId())) {
             expenseRepository.delete(expense.get());
+            updateRollups(expense.get().getTravelPlan().getId(), List.of(expense.get()), true);
         } else {
             throw new RuntimeException("消费记录不存在或无权删除");
         }
     }
     
+    /**
+     * 按消费记录重建旅行计划的消费汇总
+     */
+    @Transactional
+    public void rebuildRollups(Long travelPlanId) {
+        // 重建后的变更次数接着旧汇总行递增，消费记录的ETag不会回到重建前的值
+        long changeCount = expenseRollupRepository.findMaxChangeCountByTravelPlanId(travelPlanId) + 1;
+        expenseRollupRepository.deleteByTravelPlanId(travelPlanId);
+        expenseRollupRepository.insertFromExpenses(travelPlanId, ExpenseRollup.ALL_DAYS,
+                ExpenseRollup.ALL_CATEGORIES, DEFAULT_CATEGORY, changeCount);
+    }
+    
+    /**
+     * 更新消费所属的汇总行
+     */
+    private void updateRollups(Long travelPlanId, List<Expense> expenses, boolean removed) {
+        for (RollupDelta delta : rollupDeltas(expenses, removed)) {
+            expenseRollupRepository.increment(travelPlanId, delta.dayNumber(), delta.category(),
+                    delta.amount(), delta.count());
+        }
+        if (removed) {
+            expenseRollupRepository.deleteEmptyByTravelPlanId(travelPlanId, ExpenseRollup.ALL_CATEGORIES);
+        }
+    }
+    
+    /**
+     * 计算一组消费对汇总行的变化：每笔消费计入当天该类别、当天合计、全程该类别、全程合计四行，
+     * 按汇总行合并后每行只需一次累加；day_number <= 0的旧记录只计入全程的两行，与重建时一致
+     */
+    static List<RollupDelta> rollupDeltas(List<Expense> expenses, boolean removed) {
+        Map<RollupKey, BigDecimal> amounts = new LinkedHashMap<>();
+        Map<RollupKey, Long> counts = new LinkedHashMap<>();
+        for (Expense expense : expenses) {
+            BigDecimal amount = removed ? expense.getAmount().negate() : expense.getAmount();
+            String category = categoryOf(expense.getCategory());
+            List<Integer> dayNumbers = expense.getDayNumber() != null && expense.getDayNumber() > ExpenseRollup.ALL_DAYS
+                    ? List.of(expense.getDayNumber(), ExpenseRollup.ALL_DAYS)
+                    : List.of(ExpenseRollup.ALL_DAYS);
+            for (Integer dayNumber : dayNumbers) {
+                for (String rollupCategory : List.of(category, ExpenseRollup.ALL_CATEGORIES)) {
+                    RollupKey key = new RollupKey(dayNumber, rollupCategory);
+                    amounts.merge(key, amount, BigDecimal::add);
+                    counts.merge(key, removed ? -1L : 1L, Long::sum);
+                }
+            }
+        }
+        List<RollupDelta> deltas = new ArrayList<>(amounts.size());
+        for (Map.Entry<RollupKey, BigDecimal> entry : amounts.entrySet()) {
+            RollupKey key = entry.getKey();
+            deltas.add(new RollupDelta(key.dayNumber(), key.category(), entry.getValue(), counts.get(key)));
+        }
+        return deltas;
+    }
+    
+    private static String categoryOf(String category) {
+        return category == null || category.isBlank() ? DEFAULT_CATEGORY : category;
+    }
+    
     /**
      * 获取旅行计划某天的消费记录
      */
@@ -76,22 +209,110 @@ public class ExpenseService {
     }
     
     /**
-     * 计算某天的总消费
+     * 旅行计划某天消费记录的ETag（确保计划属于当前用户），只读取当天合计行的变更次数
+     * day_number <= 0的旧记录没有按天的汇总行，使用全程合计行的变更次数
+     */
+    public Optional<String> getExpensesETagByDay(User user, Long travelPlanId, Integer dayNumber) {
+        if (!travelPlanRepository.existsByIdAndUser(travelPlanId, user)) {
+            return Optional.empty();
+        }
+        Integer rollupDay = dayNumber != null && dayNumber > ExpenseRollup.ALL_DAYS ? dayNumber : ExpenseRollup.ALL_DAYS;
+        return Optional.of(toETag("expenses-" + travelPlanId + "-" + dayNumber, travelPlanId, rollupDay));
+    }
+    
+    /**
+     * 旅行计划全部消费记录的ETag（确保计划属于当前用户），只读取全程合计行的变更次数
+     */
+    public Optional<String> getExpensesETag(User user, Long travelPlanId) {
+        if (!travelPlanRepository.existsByIdAndUser(travelPlanId, user)) {
+            return Optional.empty();
+        }
+        return Optional.of(toETag("expenses-" + travelPlanId, travelPlanId, ExpenseRollup.ALL_DAYS));
+    }
+    
+    /**
+     * 由合计行的变更次数生成ETag；每次增删都会在同一事务中递增变更次数，还没有合计行时为0
+     */
+    private String toETag(String scope, Long travelPlanId, Integer rollupDay) {
+        long changeCount = expenseRollupRepository
+                .findChangeCount(travelPlanId, rollupDay, ExpenseRollup.ALL_CATEGORIES)
+                .orElse(0L);
+        return scope + "-" + changeCount;
+    }
+    
+    /**
+     * 计算某天的总消费，只读取一行汇总
      */
     public BigDecimal getTotalExpenseByDay(User user, Long travelPlanId, Integer dayNumber) {
-        List<Expense> expenses = getExpensesByTravelPlanAndDay(user, travelPlanId, dayNumber);
-        return expenses.stream()
-                .map(Expense::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        requireOwnedPlan(user, travelPlanId);
+        return rollupTotal(travelPlanId, dayNumber, ExpenseRollup.ALL_CATEGORIES);
     }
     
     /**
-     * 计算旅行计划的总消费
+     * 计算旅行计划的总消费，只读取一行汇总
      */
     public BigDecimal getTotalExpenseByTravelPlan(User user, Long travelPlanId) {
-        List<Expense> expenses = getExpensesByTravelPlan(user, travelPlanId);
-        return expenses.stream()
-                .map(Expense::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        requireOwnedPlan(user, travelPlanId);
+        return rollupTotal(travelPlanId, ExpenseRollup.ALL_DAYS, ExpenseRollup.ALL_CATEGORIES);
+    }
+    
+    /**
+     * 旅行计划的消费分布：总计、每天合计、每类合计及每天每类的明细
+     */
+    public Map<String, Object> getExpenseBreakdown(User user, Long travelPlanId) {
+        requireOwnedPlan(user, travelPlanId);
+        
+        BigDecimal total = BigDecimal.ZERO;
+        long count = 0;
+        List<Map<String, Object>> days = new ArrayList<>();
+        List<Map<String, Object>> categories = new ArrayList<>();
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (ExpenseRollup rollup : expenseRollupRepository.findBreakdownByTravelPlanId(travelPlanId)) {
+            boolean allDays = rollup.getDayNumber() == ExpenseRollup.ALL_DAYS;
+            boolean allCategories = ExpenseRollup.ALL_CATEGORIES.equals(rollup.getCategory());
+            if (allDays && allCategories) {
+                total = rollup.getTotalAmount();
+                count = rollup.getExpenseCount();
+            } else if (allDays) {
+                categories.add(toRollupInfo(rollup, false, true));
+            } else if (allCategories) {
+                days.add(toRollupInfo(rollup, true, false));
+            } else {
+                items.add(toRollupInfo(rollup, true, true));
+            }
+        }
+        
+        Map<String, Object> breakdown = new LinkedHashMap<>();
+        breakdown.put("total", total);
+        breakdown.put("count", count);
+        breakdown.put("days", days);
+        breakdown.put("categories", categories);
+        breakdown.put("items", items);
+        return breakdown;
+    }
+    
+    private Map<String, Object> toRollupInfo(ExpenseRollup rollup, boolean withDay, boolean withCategory) {
+        Map<String, Object> rollupInfo = new LinkedHashMap<>();
+        if (withDay) {
+            rollupInfo.put("dayNumber", rollup.getDayNumber());
+        }
+        if (withCategory) {
+            rollupInfo.put("category", rollup.getCategory());
+        }
+        rollupInfo.put("total", rollup.getTotalAmount());
+        rollupInfo.put("count", rollup.getExpenseCount());
+        return rollupInfo;
+    }
+    
+    private BigDecimal rollupTotal(Long travelPlanId, Integer dayNumber, String category) {
+        return expenseRollupRepository.findByTravelPlanIdAndDayNumberAndCategory(travelPlanId, dayNumber, category)
+                .map(ExpenseRollup::getTotalAmount)
+                .orElse(BigDecimal.ZERO);
+    }
+    
+    private void requireOwnedPlan(User user, Long travelPlanId) {
+        if (!travelPlanRepository.existsByIdAndUser(travelPlanId, user)) {
+            throw new RuntimeException("旅行计划不存在或无权访问");
+        }
     }
 }
\ No newline at end of file
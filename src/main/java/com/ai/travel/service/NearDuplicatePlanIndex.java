@@ -0,0 +1,358 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.TravelPlanRepository;
+import com.ai.travel.util.TravelRequestNormalizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 跨用户的近似重复需求索引（MinHash + LSH）
+ * 需求先规范化，目的地、天数、预算必须完全相同（作为桶键的一部分并在比较时再次核对），
+ * 其余内容切成二元组shingle后计算MinHash签名并分段（band）放入桶中；
+ * 查询时只比较至少在一个band上完全相同的候选，再用其余内容的精确Jaccard系数确认。
+ * 未识别出目的地或天数的需求不参与索引与查询。
+ * band数越多、每段行数越少，召回越高、候选越多，可通过配置调整
+ */
+@Component
+public class NearDuplicatePlanIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearDuplicatePlanIndex.class);
+
+    // 梅森素数2^31-1，用作通用哈希的模数，乘积不会溢出long
+    private static final long PRIME = Integer.MAX_VALUE;
+
+    private final TravelPlanRepository travelPlanRepository;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final double threshold;
+
+    private final double recallSampleRate;
+
+    private final int loadBatchSize;
+
+    private final long[] hashA;
+
+    private final long[] hashB;
+
+    private final List<Map<Long, Set<Long>>> buckets = new ArrayList<>();
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final Counter candidateCounter;
+
+    private final Counter verifiedCounter;
+
+    private final DistributionSummary candidateSummary;
+
+    private final Counter recallFoundCounter;
+
+    private final Counter recallMissedCounter;
+
+    public NearDuplicatePlanIndex(TravelPlanRepository travelPlanRepository,
+                                  @Value("${plan.near-duplicate.bands:16}") int bands,
+                                  @Value("${plan.near-duplicate.rows:4}") int rows,
+                                  @Value("${plan.near-duplicate.threshold:0.8}") double threshold,
+                                  @Value("${plan.near-duplicate.recall-sample-rate:0.01}") double recallSampleRate,
+                                  @Value("${plan.near-duplicate.load-batch-size:1000}") int loadBatchSize,
+                                  MeterRegistry meterRegistry) {
+        this.travelPlanRepository = travelPlanRepository;
+        this.bands = bands;
+        this.rows = rows;
+        this.threshold = threshold;
+        this.recallSampleRate = recallSampleRate;
+        this.loadBatchSize = loadBatchSize;
+
+        // 固定种子，保证重启后签名一致
+        Random random = new Random(0x5eed);
+        int numHashes = bands * rows;
+        this.hashA = new long[numHashes];
+        this.hashB = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            hashA[i] = 1 + Math.floorMod(random.nextLong(), PRIME - 1);
+            hashB[i] = Math.floorMod(random.nextLong(), PRIME);
+        }
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+
+        Gauge.builder("plan.lsh.size", this, NearDuplicatePlanIndex::size)
+                .description("近似重复索引中的计划数")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("plan.lsh.lookups").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("plan.lsh.lookups").tag("result", "miss").register(meterRegistry);
+        this.candidateCounter = Counter.builder("plan.lsh.candidates")
+                .description("LSH返回的候选数，与plan.lsh.verified之比即精确率")
+                .register(meterRegistry);
+        this.verifiedCounter = Counter.builder("plan.lsh.verified")
+                .description("精确Jaccard达到阈值的候选数")
+                .register(meterRegistry);
+        this.candidateSummary = DistributionSummary.builder("plan.lsh.candidates.per-lookup").register(meterRegistry);
+        this.recallFoundCounter = Counter.builder("plan.lsh.recall").tag("result", "found").register(meterRegistry);
+        this.recallMissedCounter = Counter.builder("plan.lsh.recall").tag("result", "missed").register(meterRegistry);
+    }
+
+    private record Entry(String attributes, Set<String> shingles, long[] signature) {
+    }
+
+    /**
+     * 需求的规范化特征：必须完全相同的目的地、天数、预算，以及用于相似度比较的其余内容shingle
+     */
+    record Features(String attributes, Set<String> shingles) {
+    }
+
+    /**
+     * 启动后分批加载已有的AI生成计划
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long afterId = 0;
+        int total = 0;
+        List<TravelPlanRepository.TravelRequestRow> batch;
+        do {
+            batch = travelPlanRepository.findGeneratedTravelRequestRowsAfter(afterId, PageRequest.of(0, loadBatchSize));
+            for (TravelPlanRepository.TravelRequestRow row : batch) {
+                add(row.getId(), row.getTravelRequest());
+                afterId = row.getId();
+            }
+            total += batch.size();
+        } while (batch.size() == loadBatchSize);
+        logger.info("Near-duplicate index loaded with {} plans", total);
+    }
+
+    /**
+     * 查找与旅行需求近似重复的计划
+     * @param travelRequest 旅行需求
+     * @return 精确Jaccard系数达到阈值的最相似计划ID
+     */
+    public Optional<Long> findNearDuplicate(String travelRequest) {
+        Features features = features(travelRequest);
+        if (features == null) {
+            return Optional.empty();
+        }
+        Set<String> shingles = features.shingles();
+        long[] signature = signature(shingles);
+
+        Long bestId = null;
+        double bestScore = 0;
+        Set<Long> candidates = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (int band = 0; band < bands; band++) {
+                Set<Long> ids = buckets.get(band).get(bandKey(features.attributes(), signature, band));
+                if (ids != null) {
+                    candidates.addAll(ids);
+                }
+            }
+            for (Long id : candidates) {
+                Entry entry = entries.get(id);
+                // 桶键包含特征的哈希，这里排除哈希碰撞
+                if (!entry.attributes().equals(features.attributes())) {
+                    continue;
+                }
+                double score = jaccard(shingles, entry.shingles());
+                if (score >= threshold) {
+                    verifiedCounter.increment();
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestId = id;
+                    }
+                }
+            }
+            if (recallSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+                sampleRecall(features, candidates);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        candidateCounter.increment(candidates.size());
+        candidateSummary.record(candidates.size());
+        if (bestId == null) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        return Optional.of(bestId);
+    }
+
+    /**
+     * 加入（或更新）一个计划
+     */
+    public void add(Long planId, String travelRequest) {
+        Features features = features(travelRequest);
+        if (planId == null || features == null) {
+            return;
+        }
+        long[] signature = signature(features.shingles());
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(planId);
+            entries.put(planId, new Entry(features.attributes(), features.shingles(), signature));
+            for (int band = 0; band < bands; band++) {
+                buckets.get(band).computeIfAbsent(bandKey(features.attributes(), signature, band),
+                        key -> new HashSet<>()).add(planId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除一个计划
+     */
+    public void remove(Long planId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(planId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(Long planId) {
+        Entry entry = entries.remove(planId);
+        if (entry == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(entry.attributes(), entry.signature(), band);
+            Set<Long> ids = buckets.get(band).get(key);
+            if (ids != null) {
+                ids.remove(planId);
+                if (ids.isEmpty()) {
+                    buckets.get(band).remove(key);
+                }
+            }
+        }
+    }
+
+    private int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 抽样统计召回率：全量比较找出所有真正达到阈值的计划，记录其中有多少被LSH选为候选
+     */
+    private void sampleRecall(Features features, Set<Long> candidates) {
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().attributes().equals(features.attributes())
+                    && jaccard(features.shingles(), entry.getValue().shingles()) >= threshold) {
+                if (candidates.contains(entry.getKey())) {
+                    recallFoundCounter.increment();
+                } else {
+                    recallMissedCounter.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * 规范化后的特征：目的地、天数、预算组成必须完全相同的部分，其余内容取相邻两字
+     * @return 未识别出目的地或天数时为null，这类需求无法确认是同一趟行程
+     */
+    static Features features(String travelRequest) {
+        TravelRequestNormalizer.CanonicalRequest canonical = TravelRequestNormalizer.canonicalize(travelRequest);
+        if (canonical.destination() == null || canonical.duration() == null) {
+            return null;
+        }
+        String attributes = canonical.destination() + "|" + canonical.duration() + "|"
+                + (canonical.budget() == null ? "" : canonical.budget());
+
+        Set<String> shingles = new HashSet<>();
+        String residual = canonical.residual();
+        if (residual.length() == 1) {
+            shingles.add(residual);
+        }
+        for (int i = 0; i + 1 < residual.length(); i++) {
+            shingles.add(residual.substring(i, i + 2));
+        }
+        return new Features(attributes, shingles);
+    }
+
+    private long[] signature(Set<String> shingles) {
+        long[] signature = new long[hashA.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String shingle : shingles) {
+            long x = Math.floorMod(mix(shingle.hashCode()), PRIME);
+            for (int i = 0; i < signature.length; i++) {
+                long value = (hashA[i] * x + hashB[i]) % PRIME;
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bandKey(String attributes, long[] signature, int band) {
+        long key = 31L * band + mix(attributes.hashCode());
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = key * 31 + signature[i];
+        }
+        return key;
+    }
+
+    static double jaccard(Set<String> a, Set<String> b) {
+        // 其余内容都为空时两者的规范形式完全相同
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        int intersection = 0;
+        for (String shingle : a) {
+            if (b.contains(shingle)) {
+                intersection++;
+            }
+        }
+        int union = a.size() + b.size() - intersection;
+        return union == 0 ? 0 : (double) intersection / union;
+    }
+
+    /**
+     * 打散String.hashCode的低位分布（MurmurHash3的fmix64）
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
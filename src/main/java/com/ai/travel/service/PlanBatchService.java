@@ -0,0 +1,126 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量生成旅行计划
+ * 各需求在批次并发上限内同时生成，每完成一项立即回调，全部完成后在同一事务中保存；
+ * 批量线程池的队列有界，已满时立即拒绝整个批次，由调用方返回503
+ */
+@Service
+public class PlanBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanBatchService.class);
+
+    @Autowired
+    private TravelPlanService travelPlanService;
+
+    @Autowired
+    private ThreadPoolTaskExecutor planBatchExecutor;
+
+    @Value("${plan.batch.parallelism:4}")
+    private int parallelism;
+
+    @Value("${plan.batch.max-size:50}")
+    private int maxSize;
+
+    /**
+     * 批量生成过程的回调，可能在多个线程中并发调用
+     */
+    public interface Listener {
+
+        /**
+         * 某项生成完成；此时尚未保存，计划没有ID，全部完成并保存后才有ID
+         */
+        void onItem(int index, TravelPlan travelPlan);
+
+        /**
+         * 某项生成失败
+         */
+        void onItemFailed(int index, Exception e);
+    }
+
+    /**
+     * 单次批量请求允许的最大需求数
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 单次批量请求的并发生成数
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 提交批量生成，并发生成后统一保存；不等待生成完成
+     * @param user 当前用户
+     * @param travelRequests 旅行需求列表
+     * @param listener 每项完成时的回调
+     * @return 全部保存后完成，结果为与需求一一对应的已保存计划，生成失败的项为null
+     * @throws TaskRejectedException 批量线程池已满，一条通道都无法提交
+     */
+    public CompletableFuture<List<TravelPlan>> startBatch(User user, List<String> travelRequests, Listener listener) {
+        int size = travelRequests.size();
+        TravelPlan[] results = new TravelPlan[size];
+
+        // 每条通道依次领取下一项，通道数即单个批次的并发上限
+        AtomicInteger nextIndex = new AtomicInteger();
+        int lanes = Math.min(parallelism, size);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < lanes; i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < size) {
+                        try {
+                            TravelPlan travelPlan = travelPlanService.prepareTravelPlan(user, travelRequests.get(index), false);
+                            results[index] = travelPlan;
+                            listener.onItem(index, travelPlan);
+                        } catch (Exception e) {
+                            logger.warn("Batch item {} failed: {}", index, e.getMessage());
+                            listener.onItemFailed(index, e);
+                        }
+                    }
+                }, planBatchExecutor));
+            } catch (TaskRejectedException e) {
+                if (futures.isEmpty()) {
+                    throw e;
+                }
+                // 已提交的通道会继续领取剩余的需求，只是并发更低
+                logger.warn("Batch started with {} of {} lanes, executor is full", futures.size(), lanes);
+                break;
+            }
+        }
+
+        // 最后一条通道结束后在该线程上保存
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<TravelPlan> generated = new ArrayList<>();
+            for (TravelPlan travelPlan : results) {
+                if (travelPlan != null) {
+                    generated.add(travelPlan);
+                }
+            }
+            travelPlanService.saveTravelPlans(generated);
+
+            // 新实体保存后即获得ID，按原顺序返回
+            return Arrays.asList(results);
+        });
+    }
+}
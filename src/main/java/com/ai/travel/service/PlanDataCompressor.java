@@ -0,0 +1,100 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.repository.TravelPlanRepository;
+import com.ai.travel.util.CompressedJson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 计划数据的压缩存储
+ * 开启后新计划以压缩形式写入plan_data_z，已有计划由后台任务分批迁移；关闭时只读取已压缩的数据，不再压缩新数据
+ */
+@Component
+public class PlanDataCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanDataCompressor.class);
+
+    private final TravelPlanRepository travelPlanRepository;
+
+    private final boolean enabled;
+
+    private final int migrationBatchSize;
+
+    private final DistributionSummary ratioSummary;
+
+    private final Counter rawBytesCounter;
+
+    private final Counter compressedBytesCounter;
+
+    private final Counter migratedCounter;
+
+    public PlanDataCompressor(TravelPlanRepository travelPlanRepository,
+                              @Value("${plan.storage.compression.enabled:false}") boolean enabled,
+                              @Value("${plan.storage.compression.migration-batch-size:200}") int migrationBatchSize,
+                              MeterRegistry meterRegistry) {
+        this.travelPlanRepository = travelPlanRepository;
+        this.enabled = enabled;
+        this.migrationBatchSize = migrationBatchSize;
+        this.ratioSummary = DistributionSummary.builder("plan.storage.compression.ratio")
+                .description("计划数据原始字节数与压缩后字节数之比")
+                .register(meterRegistry);
+        this.rawBytesCounter = Counter.builder("plan.storage.bytes").tag("type", "raw")
+                .baseUnit("bytes").register(meterRegistry);
+        this.compressedBytesCounter = Counter.builder("plan.storage.bytes").tag("type", "compressed")
+                .baseUnit("bytes").register(meterRegistry);
+        this.migratedCounter = Counter.builder("plan.storage.compression.migrated")
+                .description("后台迁移压缩的已有计划数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 保存前按配置将计划数据转为压缩形式
+     */
+    public void apply(TravelPlan travelPlan) {
+        String planData = travelPlan.getPlanData();
+        if (enabled && planData != null && !travelPlan.isPlanDataCompressed()) {
+            travelPlan.setCompressedPlanData(compress(planData));
+        }
+    }
+
+    /**
+     * 分批压缩已有计划的plan_data；每行单独更新，已压缩的行不再被查询到，中断后可继续
+     */
+    @Scheduled(fixedDelayString = "${plan.storage.compression.migration-interval:10s}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        List<TravelPlanRepository.PlanDataRow> rows =
+                travelPlanRepository.findRowsWithUncompressedPlanData(PageRequest.of(0, migrationBatchSize));
+        int migrated = 0;
+        for (TravelPlanRepository.PlanDataRow row : rows) {
+            migrated += travelPlanRepository.updateCompressedPlanData(row.getId(), compress(row.getPlanData()));
+        }
+        if (migrated > 0) {
+            migratedCounter.increment(migrated);
+            logger.info("Compressed plan data for {} existing plans", migrated);
+        }
+    }
+
+    private CompressedJson compress(String planData) {
+        CompressedJson compressed = CompressedJson.compress(planData);
+        int rawBytes = planData.getBytes(StandardCharsets.UTF_8).length;
+        int compressedBytes = compressed.bytes().length;
+        rawBytesCounter.increment(rawBytes);
+        compressedBytesCounter.increment(compressedBytes);
+        ratioSummary.record((double) rawBytes / compressedBytes);
+        return compressed;
+    }
+}
@@ -0,0 +1,52 @@
+package com.ai.travel.service;
+
+import com.ai.travel.util.TravelRequestNormalizer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 跨用户共享的旅行计划生成缓存
+ * 以规范化后的旅行需求为键，按W-TinyLFU淘汰并设置过期时间，命中/未命中/淘汰统计通过plan.generation缓存指标暴露
+ */
+@Component
+public class PlanGenerationCache {
+
+    private final Cache<String, String> cache;
+
+    public PlanGenerationCache(@Value("${plan.cache.max-size:1000}") long maxSize,
+                               @Value("${plan.cache.ttl:12h}") Duration ttl,
+                               MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "plan.generation");
+    }
+
+    /**
+     * 查找已生成的计划
+     * @param travelRequest 旅行需求
+     * @return 缓存的AI返回内容，未命中时返回null
+     */
+    public String get(String travelRequest) {
+        return cache.getIfPresent(keyOf(travelRequest));
+    }
+
+    /**
+     * 写入（或覆盖）生成结果
+     */
+    public void put(String travelRequest, String aiResponse) {
+        cache.put(keyOf(travelRequest), aiResponse);
+    }
+
+    private String keyOf(String travelRequest) {
+        return TravelRequestNormalizer.canonicalize(travelRequest).key();
+    }
+}
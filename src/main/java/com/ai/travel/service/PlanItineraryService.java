@@ -0,0 +1,200 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.PlanActivity;
+import com.ai.travel.entity.PlanDay;
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.repository.PlanActivityRepository;
+import com.ai.travel.repository.PlanDayRepository;
+import com.ai.travel.repository.TravelPlanRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 旅行计划的结构化行程（plan_days / plan_activities）
+ * 保存计划时与plan_data在同一事务中物化，读取某一天时无需加载和解析整个plan_data
+ */
+@Service
+public class PlanItineraryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanItineraryService.class);
+
+    @Autowired
+    private TravelPlanRepository travelPlanRepository;
+
+    @Autowired
+    private PlanDayRepository planDayRepository;
+
+    @Autowired
+    private PlanActivityRepository planActivityRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 保存旅行计划并物化其每日行程；已物化过的计划先删除旧行，新计划没有旧行，不发出删除语句
+     */
+    @Transactional
+    public TravelPlan saveWithItinerary(TravelPlan travelPlan) {
+        boolean hadItinerary = hadItinerary(travelPlan);
+        travelPlan.setItineraryMaterialized(true);
+        TravelPlan savedPlan = travelPlanRepository.save(travelPlan);
+        if (hadItinerary) {
+            deleteItinerary(savedPlan.getId());
+        }
+        materialize(savedPlan);
+        return savedPlan;
+    }
+
+    /**
+     * 在同一事务中保存多个旅行计划并物化其每日行程
+     */
+    @Transactional
+    public List<TravelPlan> saveAllWithItinerary(List<TravelPlan> travelPlans) {
+        List<TravelPlan> rebuilt = travelPlans.stream().filter(this::hadItinerary).toList();
+        travelPlans.forEach(travelPlan -> travelPlan.setItineraryMaterialized(true));
+        List<TravelPlan> savedPlans = travelPlanRepository.saveAll(travelPlans);
+        rebuilt.forEach(travelPlan -> deleteItinerary(travelPlan.getId()));
+        savedPlans.forEach(this::materialize);
+        return savedPlans;
+    }
+
+    private boolean hadItinerary(TravelPlan travelPlan) {
+        return travelPlan.getId() != null && travelPlan.isItineraryMaterialized();
+    }
+
+    /**
+     * 按plan_data写入计划的每日行程；计划不能已有行程，重建时须先调用deleteItinerary
+     */
+    @Transactional
+    public void materialize(TravelPlan travelPlan) {
+
+        // 新生成的计划带有已解析的计划树，用完即释放
+        JsonNode plan = travelPlan.getParsedPlanData();
+        travelPlan.setParsedPlanData(null);
+        if (plan == null) {
+            try {
+                plan = objectMapper.readTree(travelPlan.getPlanData());
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                logger.warn("Plan {} data is not valid JSON, itinerary not materialized", travelPlan.getId());
+                return;
+            }
+        }
+
+        Set<Integer> dayNumbers = new HashSet<>();
+        int index = 0;
+        for (JsonNode day : plan.path("days")) {
+            index++;
+            int dayNumber = day.path("day").canConvertToInt() && day.path("day").asInt() > 0
+                    ? day.path("day").asInt() : index;
+            if (!dayNumbers.add(dayNumber)) {
+                continue;
+            }
+            PlanDay planDay = planDayRepository.save(new PlanDay(travelPlan, dayNumber,
+                    truncate(textOf(day, "date"), 20), truncate(textOf(day, "title"), 200)));
+
+            List<PlanActivity> activities = new ArrayList<>();
+            int position = 0;
+            for (JsonNode activity : day.path("activities")) {
+                activities.add(new PlanActivity(planDay, position++,
+                        truncate(textOf(activity, "name"), 200),
+                        truncate(textOf(activity, "time"), 50),
+                        budgetOf(activity),
+                        textOf(activity, "description")));
+            }
+            planActivityRepository.saveAll(activities);
+        }
+    }
+
+    /**
+     * 删除计划的每日行程
+     */
+    @Transactional
+    public void deleteItinerary(Long travelPlanId) {
+        planActivityRepository.deleteByTravelPlanId(travelPlanId);
+        planDayRepository.deleteByTravelPlanId(travelPlanId);
+    }
+
+    /**
+     * 读取计划某一天的行程；在物化表出现之前创建的计划会在首次读取时补建
+     * 补建前锁定计划行并再次检查物化标记，并发的首次读取只有一个执行补建，其余等待后直接读取；
+     * 物化后即使没有任何一天也会记下标记，不会每次读取都重新补建
+     * @param travelPlanId 已确认属于当前用户的计划ID
+     * @param dayNumber 第几天
+     * @return 当天行程，不存在时为空
+     */
+    @Transactional
+    public Optional<Map<String, Object>> getDay(Long travelPlanId, Integer dayNumber) {
+        Optional<PlanDay> planDay = planDayRepository.findByTravelPlanIdAndDayNumber(travelPlanId, dayNumber);
+        if (planDay.isPresent() || travelPlanRepository.findItineraryMaterializedById(travelPlanId).orElse(false)) {
+            return planDay.map(this::toDayInfo);
+        }
+
+        Optional<TravelPlan> travelPlan = travelPlanRepository.findByIdForUpdate(travelPlanId);
+        if (travelPlan.isPresent() && !travelPlan.get().isItineraryMaterialized()) {
+            // 物化标记出现之前可能已写入过部分行，补建前清理
+            deleteItinerary(travelPlanId);
+            materialize(travelPlan.get());
+            travelPlanRepository.markItineraryMaterialized(travelPlanId);
+        }
+        return planDayRepository.findByTravelPlanIdAndDayNumber(travelPlanId, dayNumber).map(this::toDayInfo);
+    }
+
+    private Map<String, Object> toDayInfo(PlanDay planDay) {
+        List<Map<String, Object>> activities = new ArrayList<>();
+        for (PlanActivity activity : planActivityRepository.findByPlanDayOrderByPositionAsc(planDay)) {
+            Map<String, Object> activityInfo = new LinkedHashMap<>();
+            activityInfo.put("name", activity.getName());
+            activityInfo.put("time", activity.getTime());
+            activityInfo.put("budget", activity.getBudget());
+            activityInfo.put("description", activity.getDescription());
+            activities.add(activityInfo);
+        }
+
+        Map<String, Object> dayInfo = new LinkedHashMap<>();
+        dayInfo.put("day", planDay.getDayNumber());
+        dayInfo.put("date", planDay.getDate());
+        dayInfo.put("title", planDay.getTitle());
+        dayInfo.put("activities", activities);
+        return dayInfo;
+    }
+
+    private String textOf(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() || value.isContainerNode() ? null : value.asText();
+    }
+
+    private BigDecimal budgetOf(JsonNode activity) {
+        JsonNode budget = activity.get("budget");
+        if (budget == null || budget.isNull()) {
+            return null;
+        }
+        BigDecimal value;
+        try {
+            value = budget.isNumber() ? budget.decimalValue() : new BigDecimal(budget.asText().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // 与budget列的DECIMAL(10,2)保持一致
+        value = value.setScale(2, RoundingMode.HALF_UP);
+        return value.precision() > 10 ? null : value;
+    }
+
+    private String truncate(String text, int maxLength) {
+        return text != null && text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+}
@@ -0,0 +1,134 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.PlanJob;
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import com.ai.travel.repository.PlanJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 旅行计划异步生成任务
+ * 提交后立即返回任务ID，由独立的有界线程池调用大模型，HTTP并发与大模型并发相互隔离；
+ * 每个任务记录所属实例并定时刷新心跳，心跳过期（实例已退出）的任务由存活的实例标记为失败
+ */
+@Service
+public class PlanJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanJobService.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final List<PlanJob.Status> UNFINISHED = List.of(PlanJob.Status.QUEUED, PlanJob.Status.RUNNING);
+
+    // 本进程的实例ID，每次启动都不同
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Autowired
+    private PlanJobRepository planJobRepository;
+
+    @Autowired
+    private TravelPlanService travelPlanService;
+
+    @Autowired
+    private ThreadPoolTaskExecutor planJobExecutor;
+
+    @Value("${plan.job.stale-after:2m}")
+    private Duration staleAfter;
+
+    /**
+     * 提交旅行计划生成任务
+     * @throws TaskRejectedException 任务队列已满
+     */
+    public PlanJob submitJob(User user, String travelRequest) {
+        PlanJob newJob = new PlanJob(user, travelRequest);
+        newJob.setOwner(instanceId);
+        newJob.setHeartbeatAt(LocalDateTime.now());
+        PlanJob job = planJobRepository.save(newJob);
+        Long jobId = job.getId();
+
+        try {
+            planJobExecutor.execute(() -> runJob(jobId, user, travelRequest));
+        } catch (TaskRejectedException e) {
+            markFailed(job, "任务队列已满，请稍后重试");
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * 根据ID获取任务（确保属于当前用户）
+     */
+    public Optional<PlanJob> getJob(Long jobId, User user) {
+        return planJobRepository.findByIdAndUser(jobId, user);
+    }
+
+    /**
+     * 刷新本实例未结束任务的心跳
+     */
+    @Scheduled(fixedDelayString = "${plan.job.heartbeat-interval:15s}")
+    public void heartbeat() {
+        planJobRepository.touchJobs(instanceId, UNFINISHED, LocalDateTime.now());
+        failInterruptedJobs();
+    }
+
+    /**
+     * 处理任务的实例退出后，排队中或执行中的任务已无线程处理，标记为失败
+     * 只处理心跳超过stale-after未刷新的其他实例的任务，正在运行的实例的任务不受影响
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        int count = planJobRepository.failStaleJobs(UNFINISHED, instanceId, now.minus(staleAfter),
+                "处理任务的服务实例已退出，任务已中断", now);
+        if (count > 0) {
+            logger.warn("Marked {} interrupted plan jobs as failed", count);
+        }
+    }
+
+    private void runJob(Long jobId, User user, String travelRequest) {
+        PlanJob job = planJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        job.setStatus(PlanJob.Status.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        job = planJobRepository.save(job);
+
+        try {
+            TravelPlan travelPlan = travelPlanService.createTravelPlan(user, travelRequest);
+            job.setTravelPlan(travelPlan);
+            job.setStatus(PlanJob.Status.DONE);
+            job.setFinishedAt(LocalDateTime.now());
+            planJobRepository.save(job);
+        } catch (Exception e) {
+            logger.error("Plan job {} failed: {}", jobId, e.getMessage());
+            markFailed(job, "生成旅行计划失败: " + e.getMessage());
+        }
+    }
+
+    private void markFailed(PlanJob job, String errorMessage) {
+        if (errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH) {
+            errorMessage = errorMessage.substring(0, MAX_ERROR_LENGTH);
+        }
+        job.setStatus(PlanJob.Status.FAILED);
+        job.setErrorMessage(errorMessage);
+        job.setFinishedAt(LocalDateTime.now());
+        planJobRepository.save(job);
+    }
+}
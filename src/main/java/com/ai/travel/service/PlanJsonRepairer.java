@@ -0,0 +1,452 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.PlanFormatException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AI返回计划的提取与修复
+ * 依次执行：提取Markdown代码块或正文中的JSON、补全被截断的数组与对象、按计划结构校验并修正字段，
+ * 并记录实际执行了哪些修复，尽量避免因格式问题丢弃整次生成结果；
+ * 结果中带有解析好的计划树与摘要，调用方不必再次解析
+ */
+@Component
+public class PlanJsonRepairer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanJsonRepairer.class);
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+(?:\\.\\d+)?");
+
+    private static final Pattern FENCE_PATTERN = Pattern.compile("```(?:json|JSON)?\\s*([\\s\\S]*?)(?:```|$)");
+
+    /**
+     * 计划结构：根对象字段、单日字段与活动字段的约束，类加载时构建一次；
+     * 天数与第几天必须是整数，解析摘要时只读取整数
+     */
+    private static final List<FieldRule> ROOT_RULES = List.of(
+            new FieldRule("destination", JsonNodeType.STRING, true),
+            FieldRule.integer("duration"),
+            new FieldRule("totalBudget", JsonNodeType.NUMBER, false),
+            new FieldRule("days", JsonNodeType.ARRAY, true));
+
+    private static final List<FieldRule> DAY_RULES = List.of(
+            FieldRule.integer("day"),
+            new FieldRule("title", JsonNodeType.STRING, false),
+            new FieldRule("activities", JsonNodeType.ARRAY, false));
+
+    private static final List<FieldRule> ACTIVITY_RULES = List.of(
+            new FieldRule("name", JsonNodeType.STRING, true),
+            new FieldRule("time", JsonNodeType.STRING, false),
+            new FieldRule("budget", JsonNodeType.NUMBER, false),
+            new FieldRule("description", JsonNodeType.STRING, false));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 容忍尾逗号、单引号、注释等常见的非标准写法
+    private final ObjectMapper lenientMapper = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .build();
+
+    private final MeterRegistry meterRegistry;
+
+    public PlanJsonRepairer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 修复结果
+     * @param json 可用的计划JSON，修复失败时为null
+     * @param repairs 执行过的修复
+     * @param error 修复失败的原因
+     * @param document 与json对应的计划树与摘要，修复失败时为null
+     */
+    public record RepairResult(String json, List<String> repairs, String error,
+                               PlanStreamParser.PlanDocument document) {
+
+        static RepairResult failed(List<String> repairs, String error) {
+            return new RepairResult(null, repairs, error, null);
+        }
+
+        public boolean valid() {
+            return json != null;
+        }
+    }
+
+    /**
+     * @param integral 数字字段是否必须为整数
+     */
+    private record FieldRule(String name, JsonNodeType type, boolean required, boolean integral) {
+
+        FieldRule(String name, JsonNodeType type, boolean required) {
+            this(name, type, required, false);
+        }
+
+        static FieldRule integer(String name) {
+            return new FieldRule(name, JsonNodeType.NUMBER, false, true);
+        }
+    }
+
+    /**
+     * 从AI返回内容中提取并修复计划JSON
+     * @param aiResponse AI返回的原始文本
+     * @return 修复结果
+     */
+    public RepairResult repair(String aiResponse) {
+        if (aiResponse == null || aiResponse.isBlank()) {
+            return report(RepairResult.failed(List.of(), "AI返回内容为空"));
+        }
+
+        // 大多数返回本身就是完整的计划，一遍解析同时完成校验、构建树和读取摘要
+        PlanStreamParser.PlanDocument document = parseCleanPlan(aiResponse);
+        if (document != null) {
+            return report(new RepairResult(aiResponse, List.of(), null, document));
+        }
+
+        List<String> repairs = new ArrayList<>();
+        String text = extractJson(aiResponse, repairs);
+        if (text == null) {
+            return report(RepairResult.failed(repairs, "未找到JSON内容"));
+        }
+        text = closeTruncated(text, repairs);
+
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            try {
+                root = lenientMapper.readTree(text);
+                repairs.add("relaxed_syntax");
+            } catch (JsonProcessingException lenientError) {
+                return report(RepairResult.failed(repairs, "JSON无法解析: " + e.getOriginalMessage()));
+            }
+        }
+        if (!(root instanceof ObjectNode plan)) {
+            return report(RepairResult.failed(repairs, "计划必须是JSON对象"));
+        }
+
+        String error = validate(plan, repairs);
+        if (error != null) {
+            return report(RepairResult.failed(repairs, error));
+        }
+        try {
+            return report(new RepairResult(objectMapper.writeValueAsString(plan), repairs, null,
+                    new PlanStreamParser.PlanDocument(plan, PlanStreamParser.summarize(plan))));
+        } catch (JsonProcessingException | PlanFormatException e) {
+            return report(RepairResult.failed(repairs, e.getMessage()));
+        }
+    }
+
+    /**
+     * 严格解析未经修复的返回内容，不是完整可用的计划时返回null；
+     * 给出了天数或总预算但类型不对（如"5天"）时摘要读不到，也交给修复流程
+     */
+    private PlanStreamParser.PlanDocument parseCleanPlan(String text) {
+        try {
+            PlanStreamParser.PlanDocument document = PlanStreamParser.parseDocument(text);
+            PlanStreamParser.PlanSummary summary = document.summary();
+            JsonNode plan = document.plan();
+            if ((plan.hasNonNull("duration") && summary.duration() == null)
+                    || (plan.hasNonNull("totalBudget") && summary.totalBudget() == null)) {
+                return null;
+            }
+            return summary.destination() != null && summary.dayCount() > 0 ? document : null;
+        } catch (PlanFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 提取Markdown代码块或前后带说明文字的JSON
+     */
+    private String extractJson(String aiResponse, List<String> repairs) {
+        String text = aiResponse.trim();
+
+        Matcher fence = FENCE_PATTERN.matcher(text);
+        while (fence.find()) {
+            String body = fence.group(1).trim();
+            if (body.startsWith("{")) {
+                repairs.add("extracted_fenced");
+                return body;
+            }
+        }
+
+        int start = text.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        int end = findObjectEnd(text, start);
+        String json = end < 0 ? text.substring(start) : text.substring(start, end + 1);
+        if (json.length() != text.length()) {
+            repairs.add("extracted_embedded");
+        }
+        return json;
+    }
+
+    /**
+     * 找到从start开始的对象的结束位置，未闭合时返回-1
+     */
+    private int findObjectEnd(String text, int start) {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 补全被截断的JSON：回退到最后一个完整的值，丢弃残缺的键值，再按嵌套顺序补上缺失的括号
+     */
+    private String closeTruncated(String text, List<String> repairs) {
+        StringBuilder stack = new StringBuilder();
+        // 每个对象当前是否在等待键名
+        StringBuilder expectingKey = new StringBuilder();
+        boolean inString = false;
+        boolean escaped = false;
+        boolean stringIsKey = false;
+        int safeEnd = 0;
+        String safeStack = "";
+        int tokenStart = -1;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (!stringIsKey) {
+                        safeEnd = i + 1;
+                        safeStack = stack.toString();
+                    }
+                }
+                continue;
+            }
+
+            boolean delimiter = c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c);
+            if (tokenStart >= 0 && delimiter) {
+                // 数字或字面量在分隔符处结束
+                safeEnd = i;
+                safeStack = stack.toString();
+                tokenStart = -1;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    stringIsKey = isInObject(stack) && expectingKey.charAt(expectingKey.length() - 1) == 'k';
+                }
+                case '{' -> {
+                    stack.append('{');
+                    expectingKey.append('k');
+                    safeEnd = i + 1;
+                    safeStack = stack.toString();
+                }
+                case '[' -> {
+                    stack.append('[');
+                    expectingKey.append('v');
+                    safeEnd = i + 1;
+                    safeStack = stack.toString();
+                }
+                case '}', ']' -> {
+                    if (stack.length() > 0) {
+                        stack.setLength(stack.length() - 1);
+                        expectingKey.setLength(expectingKey.length() - 1);
+                    }
+                    safeEnd = i + 1;
+                    safeStack = stack.toString();
+                }
+                case ':' -> {
+                    if (isInObject(stack)) {
+                        expectingKey.setCharAt(expectingKey.length() - 1, 'v');
+                    }
+                }
+                case ',' -> {
+                    if (isInObject(stack)) {
+                        expectingKey.setCharAt(expectingKey.length() - 1, 'k');
+                    }
+                }
+                default -> {
+                    if (!Character.isWhitespace(c) && tokenStart < 0) {
+                        tokenStart = i;
+                    }
+                }
+            }
+        }
+
+        if (stack.length() == 0 && !inString) {
+            return text;
+        }
+
+        StringBuilder repaired = new StringBuilder(text.substring(0, safeEnd));
+        // 去掉末尾残留的逗号
+        int last = repaired.length() - 1;
+        while (last >= 0 && Character.isWhitespace(repaired.charAt(last))) {
+            last--;
+        }
+        if (last >= 0 && repaired.charAt(last) == ',') {
+            repaired.setLength(last);
+        }
+        for (int i = safeStack.length() - 1; i >= 0; i--) {
+            repaired.append(safeStack.charAt(i) == '{' ? '}' : ']');
+        }
+        repairs.add("closed_truncated");
+        return repaired.toString();
+    }
+
+    private boolean isInObject(StringBuilder stack) {
+        return stack.length() > 0 && stack.charAt(stack.length() - 1) == '{';
+    }
+
+    /**
+     * 按计划结构校验并修正，返回无法修复的错误
+     */
+    private String validate(ObjectNode plan, List<String> repairs) {
+        String error = applyRules(plan, ROOT_RULES, "plan", repairs);
+        if (error != null) {
+            return error;
+        }
+
+        ArrayNode days = (ArrayNode) plan.get("days");
+        Iterator<JsonNode> dayIterator = days.elements();
+        while (dayIterator.hasNext()) {
+            JsonNode day = dayIterator.next();
+            if (!(day instanceof ObjectNode dayNode) || applyRules(dayNode, DAY_RULES, "day", repairs) != null) {
+                dayIterator.remove();
+                repairs.add("dropped_invalid_day");
+                continue;
+            }
+            if (!dayNode.has("activities")) {
+                dayNode.set("activities", objectMapper.createArrayNode());
+                repairs.add("filled_day_activities");
+            }
+            Iterator<JsonNode> activityIterator = dayNode.get("activities").elements();
+            while (activityIterator.hasNext()) {
+                JsonNode activity = activityIterator.next();
+                if (!(activity instanceof ObjectNode activityNode)
+                        || applyRules(activityNode, ACTIVITY_RULES, "activity", repairs) != null) {
+                    activityIterator.remove();
+                    repairs.add("dropped_incomplete_activity");
+                }
+            }
+        }
+        if (days.isEmpty()) {
+            return "计划中没有可用的行程天数";
+        }
+
+        for (int i = 0; i < days.size(); i++) {
+            ObjectNode day = (ObjectNode) days.get(i);
+            if (!day.has("day")) {
+                day.put("day", i + 1);
+                repairs.add("filled_day_number");
+            }
+        }
+        if (!plan.has("duration")) {
+            plan.put("duration", days.size());
+            repairs.add("filled_duration");
+        }
+        return null;
+    }
+
+    /**
+     * 校验对象字段类型，可将数字字符串转换为数字，类型不符的可选字段直接移除；
+     * 整数字段保存为整数节点，小数或带小数点的字符串取整数部分
+     */
+    private String applyRules(ObjectNode node, List<FieldRule> rules, String scope, List<String> repairs) {
+        for (FieldRule rule : rules) {
+            JsonNode value = node.get(rule.name());
+            if (value == null || value.isNull()) {
+                if (rule.required()) {
+                    return scope + "." + rule.name() + "缺失";
+                }
+                node.remove(rule.name());
+                continue;
+            }
+            if (value.getNodeType() == rule.type() && (!rule.integral() || value.isIntegralNumber())) {
+                continue;
+            }
+            if (rule.integral() && value.isNumber()) {
+                node.put(rule.name(), value.intValue());
+                repairs.add("coerced_" + scope + "_" + rule.name());
+                continue;
+            }
+            if (rule.type() == JsonNodeType.NUMBER && value.isTextual()) {
+                Matcher number = NUMBER_PATTERN.matcher(value.asText());
+                if (number.find()) {
+                    BigDecimal parsed = new BigDecimal(number.group());
+                    if (rule.integral()) {
+                        node.put(rule.name(), parsed.intValue());
+                    } else {
+                        node.put(rule.name(), parsed);
+                    }
+                    repairs.add("coerced_" + scope + "_" + rule.name());
+                    continue;
+                }
+            }
+            if (rule.type() == JsonNodeType.STRING && value.isValueNode()) {
+                node.put(rule.name(), value.asText());
+                repairs.add("coerced_" + scope + "_" + rule.name());
+                continue;
+            }
+            if (rule.required()) {
+                return scope + "." + rule.name() + "类型错误";
+            }
+            node.remove(rule.name());
+            repairs.add("removed_" + scope + "_" + rule.name());
+        }
+        return null;
+    }
+
+    private RepairResult report(RepairResult result) {
+        String outcome = !result.valid() ? "failed" : result.repairs().isEmpty() ? "clean" : "repaired";
+        meterRegistry.counter("plan.repair.outcome", "result", outcome).increment();
+        for (String repair : result.repairs()) {
+            meterRegistry.counter("plan.repair.applied", "type", repair).increment();
+        }
+        if (!result.repairs().isEmpty() || !result.valid()) {
+            logger.info("Plan repair outcome={}, repairs={}, error={}", outcome, result.repairs(), result.error());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,212 @@
+package com.ai.travel.service;
+
+import com.ai.travel.util.ContentHash;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预压缩的计划响应体缓存
+ * 响应体按计划ETag缓存，每个计划版本只序列化并压缩一次，之后按原字节直接返回；
+ * 内存层按字节数限制容量，被淘汰的条目写入磁盘层，磁盘层同样按字节数限制，再次读取时提升回内存
+ */
+@Component
+public class PlanPayloadCache {
+
+    public static final String GZIP = "gzip";
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanPayloadCache.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+
+    private final Path spillDirectory;
+
+    private final Cache<String, byte[]> memory;
+
+    private final Cache<String, Long> disk;
+
+    private final Counter spilledCounter;
+
+    public PlanPayloadCache(ObjectMapper objectMapper,
+                            @Value("${plan.payload-cache.enabled:true}") boolean enabled,
+                            @Value("${plan.payload-cache.max-memory:64MB}") DataSize maxMemory,
+                            @Value("${plan.payload-cache.max-disk:512MB}") DataSize maxDisk,
+                            @Value("${plan.payload-cache.spill-directory:${java.io.tmpdir}/ai-travel-plan-payloads}") String spillDirectory,
+                            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.spillDirectory = Path.of(spillDirectory);
+        this.disk = Caffeine.newBuilder()
+                .maximumWeight(maxDisk.toBytes())
+                .weigher((String key, Long size) -> (int) Math.min(size, Integer.MAX_VALUE))
+                .evictionListener((String key, Long size, RemovalCause cause) -> deleteSpilled(key))
+                .recordStats()
+                .build();
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((String key, byte[] payload) -> key.length() + payload.length)
+                .evictionListener((String key, byte[] payload, RemovalCause cause) -> spill(key, payload))
+                .recordStats()
+                .build();
+        this.spilledCounter = Counter.builder("plan.payload.spilled")
+                .description("从内存层写入磁盘层的响应体数量")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "plan.payload.memory");
+        CaffeineCacheMetrics.monitor(meterRegistry, disk, "plan.payload.disk");
+
+        if (enabled) {
+            // 磁盘层的索引只在内存中，上次运行留下的文件无法再使用
+            prepareSpillDirectory();
+        }
+    }
+
+    /**
+     * 按Accept-Encoding选择可直接返回的预压缩编码
+     * @param acceptEncoding 请求头Accept-Encoding
+     * @return 选中的编码，客户端不接受或缓存未开启时为空
+     */
+    public Optional<String> negotiate(String acceptEncoding) {
+        if (!enabled || acceptEncoding == null) {
+            return Optional.empty();
+        }
+        // 显式列出的gzip优先于通配符*
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            String coding = parts[0].trim().toLowerCase();
+            if (coding.equals(GZIP)) {
+                gzipQuality = qualityOf(parts);
+            } else if (coding.equals("*")) {
+                anyQuality = qualityOf(parts);
+            }
+        }
+        double quality = gzipQuality >= 0 ? gzipQuality : anyQuality;
+        return quality > 0 ? Optional.of(GZIP) : Optional.empty();
+    }
+
+    /**
+     * 获取预压缩的响应体，不存在时序列化并压缩后放入缓存
+     * @param key 缓存键，需包含计划ETag，计划变化后自然失效
+     * @param body 响应体，返回null时不缓存
+     * @return gzip压缩后的响应体字节，body返回null时为null
+     */
+    public byte[] get(String key, Supplier<?> body) {
+        byte[] payload = memory.getIfPresent(key);
+        if (payload == null) {
+            payload = readSpilled(key);
+            if (payload == null) {
+                Object value = body.get();
+                if (value == null) {
+                    return null;
+                }
+                payload = gzip(value);
+            }
+            memory.put(key, payload);
+        }
+        return payload;
+    }
+
+    private byte[] gzip(Object body) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            // 每个版本只压缩一次，使用最高压缩级别
+            try (GZIPOutputStream gzip = new GZIPOutputStream(output) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                objectMapper.writeValue(gzip, body);
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void spill(String key, byte[] payload) {
+        try {
+            Files.write(spillPath(key), payload);
+            disk.put(key, (long) payload.length);
+            spilledCounter.increment();
+        } catch (IOException e) {
+            logger.warn("Failed to spill plan payload to disk: {}", e.getMessage());
+        }
+    }
+
+    private byte[] readSpilled(String key) {
+        if (disk.getIfPresent(key) == null) {
+            return null;
+        }
+        disk.invalidate(key);
+        try {
+            return Files.readAllBytes(spillPath(key));
+        } catch (IOException e) {
+            logger.warn("Failed to read spilled plan payload: {}", e.getMessage());
+            return null;
+        } finally {
+            deleteSpilled(key);
+        }
+    }
+
+    private void deleteSpilled(String key) {
+        try {
+            Files.deleteIfExists(spillPath(key));
+        } catch (IOException e) {
+            logger.warn("Failed to delete spilled plan payload: {}", e.getMessage());
+        }
+    }
+
+    private Path spillPath(String key) {
+        return spillDirectory.resolve(ContentHash.sha256Hex(key) + ".gz");
+    }
+
+    private void prepareSpillDirectory() {
+        try {
+            Files.createDirectories(spillDirectory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDirectory, "*.gz")) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double qualityOf(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
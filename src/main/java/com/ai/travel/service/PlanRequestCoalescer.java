@@ -0,0 +1,105 @@
+package com.ai.travel.service;
+
+import com.ai.travel.util.TravelRequestNormalizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 合并并发的相同旅行需求：同一规范化需求同时只发起一次大模型调用，其余调用方等待并共享结果
+ */
+@Component
+public class PlanRequestCoalescer {
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final Duration timeout;
+
+    private final Counter leaderCounter;
+    private final Counter coalescedCounter;
+    private final Counter timeoutCounter;
+
+    public PlanRequestCoalescer(@Value("${plan.single-flight.timeout:90s}") Duration timeout,
+                                MeterRegistry meterRegistry) {
+        this.timeout = timeout;
+        this.leaderCounter = Counter.builder("plan.singleflight.calls")
+                .tag("result", "leader")
+                .description("实际发起大模型调用的次数")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("plan.singleflight.calls")
+                .tag("result", "coalesced")
+                .description("合并到进行中调用的次数")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("plan.singleflight.calls")
+                .tag("result", "timeout")
+                .description("等待进行中调用超时的次数")
+                .register(meterRegistry);
+        Gauge.builder("plan.singleflight.in-flight", inFlight, Map::size)
+                .description("正在进行中的不同旅行需求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行或合并一次生成调用
+     * @param travelRequest 旅行需求
+     * @param generator 实际的生成逻辑
+     * @return 生成结果
+     */
+    public String execute(String travelRequest, Supplier<String> generator) {
+        String key = TravelRequestNormalizer.normalize(travelRequest);
+        InFlight mine = new InFlight(new CompletableFuture<>(), System.nanoTime() + timeout.toNanos());
+        InFlight existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing == null) {
+            leaderCounter.increment();
+            try {
+                String result = generator.get();
+                mine.future().complete(result);
+                return result;
+            } catch (RuntimeException e) {
+                mine.future().completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        coalescedCounter.increment();
+        return await(existing);
+    }
+
+    /**
+     * 等待进行中的调用，截止时间从该需求首次发起时开始计算
+     */
+    private String await(InFlight existing) {
+        long remaining = existing.deadlineNanos() - System.nanoTime();
+        try {
+            return existing.future().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeoutCounter.increment();
+            throw new RuntimeException("等待相同旅行需求的生成结果超时");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待生成结果时被中断", e);
+        }
+    }
+
+    private record InFlight(CompletableFuture<String> future, long deadlineNanos) {
+    }
+}
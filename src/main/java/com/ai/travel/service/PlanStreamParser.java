@@ -0,0 +1,324 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.PlanFormatException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于Jackson非阻塞解析器的旅行计划增量解析
+ * 随内容到达逐段解析，目的地、天数以及每个闭合的单日行程一出现即回调，结构不合法时立即抛出异常；
+ * 默认不构建整份计划的树结构，需要时由{@link #parseDocument(String)}在同一遍解析中同时得到树和摘要
+ */
+public class PlanStreamParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 解析事件回调
+     */
+    public interface Listener {
+        default void onDestination(String destination) {
+        }
+
+        default void onDuration(int duration) {
+        }
+
+        /**
+         * 某一天的行程对象已闭合
+         */
+        default void onDay(JsonNode day) {
+        }
+    }
+
+    /**
+     * 解析得到的计划摘要
+     * @param destination 目的地
+     * @param duration 天数
+     * @param totalBudget 显式给出的总预算
+     * @param activitiesBudget 各活动预算之和
+     * @param dayCount 天数组中的元素个数
+     */
+    public record PlanSummary(String destination, Integer duration, BigDecimal totalBudget,
+                              BigDecimal activitiesBudget, int dayCount) {
+    }
+
+    /**
+     * 一次解析得到的计划树与摘要
+     */
+    public record PlanDocument(JsonNode plan, PlanSummary summary) {
+    }
+
+    private final JsonParser parser;
+    private final Listener listener;
+    private final boolean lenient;
+
+    private int depth;
+    private boolean rootStarted;
+    private boolean rootClosed;
+    private boolean inDays;
+    private TokenBuffer dayBuffer;
+    // 整份计划的事件副本，只在需要树结构时记录
+    private TokenBuffer rootBuffer;
+
+    private String destination;
+    private Integer duration;
+    private BigDecimal totalBudget;
+    private BigDecimal activitiesBudget = BigDecimal.ZERO;
+    private int dayCount;
+
+    /**
+     * @param listener 解析事件回调，为null时不构建单日行程节点
+     * @param lenient 为true时忽略根对象之前和之后的文本（如说明文字、Markdown代码块标记）
+     */
+    public PlanStreamParser(Listener listener, boolean lenient) {
+        this(createNonBlockingParser(), listener, lenient);
+    }
+
+    private PlanStreamParser(JsonParser parser, Listener listener, boolean lenient) {
+        this.parser = parser;
+        this.listener = listener;
+        this.lenient = lenient;
+    }
+
+    private static JsonParser createNonBlockingParser() {
+        try {
+            return JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 严格解析一份完整的计划JSON，根对象前后只允许空白
+     * @throws PlanFormatException 不是合法的计划JSON
+     */
+    public static PlanSummary parse(String json) {
+        if (json == null) {
+            throw new PlanFormatException("计划必须是JSON对象");
+        }
+        PlanStreamParser planParser = new PlanStreamParser(null, false);
+        planParser.feed(json);
+        return planParser.finish();
+    }
+
+    /**
+     * 严格解析一份完整的计划JSON，同时得到计划树和摘要
+     * @throws PlanFormatException 不是合法的计划JSON
+     */
+    public static PlanDocument parseDocument(String json) {
+        if (json == null) {
+            throw new PlanFormatException("计划必须是JSON对象");
+        }
+        PlanStreamParser planParser = new PlanStreamParser(null, false);
+        planParser.rootBuffer = new TokenBuffer(OBJECT_MAPPER, false);
+        planParser.feed(json);
+        PlanSummary summary = planParser.finish();
+        try {
+            return new PlanDocument(OBJECT_MAPPER.readTree(planParser.rootBuffer.asParser()), summary);
+        } catch (IOException e) {
+            throw new PlanFormatException("计划JSON格式错误: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从已构建的计划树中读取摘要，不再经过文本解析
+     * @throws PlanFormatException 计划结构不合法
+     */
+    public static PlanSummary summarize(JsonNode plan) {
+        PlanStreamParser planParser = new PlanStreamParser(plan.traverse(), null, false);
+        try {
+            planParser.drain();
+        } catch (IOException e) {
+            throw new PlanFormatException("计划JSON格式错误: " + e.getMessage(), e);
+        }
+        if (!planParser.rootClosed) {
+            throw new PlanFormatException("计划必须是JSON对象");
+        }
+        return planParser.summary();
+    }
+
+    /**
+     * 追加一段内容并解析其中已完整的部分
+     * @throws PlanFormatException 内容不是合法的计划JSON
+     */
+    public void feed(String delta) {
+        if (rootClosed && lenient) {
+            return;
+        }
+
+        String input = delta;
+        if (!rootStarted) {
+            int start = input.indexOf('{');
+            if (start < 0) {
+                if (!lenient && !input.isBlank()) {
+                    throw new PlanFormatException("计划必须是JSON对象");
+                }
+                return;
+            }
+            if (!lenient && !input.substring(0, start).isBlank()) {
+                throw new PlanFormatException("计划必须是JSON对象");
+            }
+            input = input.substring(start);
+            rootStarted = true;
+        }
+
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (IOException e) {
+            throw new PlanFormatException("计划JSON格式错误: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 结束输入并返回解析结果
+     * @throws PlanFormatException 内容不完整或不合法
+     */
+    public PlanSummary finish() {
+        // 严格模式下根对象闭合后仍需结束输入，以发现末尾未完成的多余内容
+        if (!rootClosed || !lenient) {
+            try {
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+                drain();
+            } catch (IOException e) {
+                throw new PlanFormatException("计划JSON格式错误: " + e.getMessage(), e);
+            }
+        }
+        if (!rootClosed) {
+            throw new PlanFormatException("计划JSON不完整");
+        }
+        return summary();
+    }
+
+    private PlanSummary summary() {
+        return new PlanSummary(destination, duration, totalBudget, activitiesBudget, dayCount);
+    }
+
+    /**
+     * 处理已到达的全部事件；宽松模式在根对象闭合后停止，严格模式下根对象之后出现任何值都视为错误
+     */
+    private void drain() throws IOException {
+        JsonToken token;
+        while (!(rootClosed && lenient) && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (rootClosed) {
+                throw new PlanFormatException("计划JSON之后存在多余内容");
+            }
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (depth == 0 && token != JsonToken.START_OBJECT) {
+            throw new PlanFormatException("计划必须是JSON对象");
+        }
+
+        if (dayBuffer != null) {
+            dayBuffer.copyCurrentEvent(parser);
+        }
+        if (rootBuffer != null) {
+            rootBuffer.copyCurrentEvent(parser);
+        }
+
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> {
+                validateContainer(token);
+                depth++;
+                if (depth == 2 && token == JsonToken.START_ARRAY && isRootField("days")) {
+                    inDays = true;
+                } else if (depth == 3 && inDays) {
+                    dayCount++;
+                    if (listener != null) {
+                        dayBuffer = new TokenBuffer(OBJECT_MAPPER, false);
+                        dayBuffer.copyCurrentEvent(parser);
+                    }
+                }
+            }
+            case END_OBJECT, END_ARRAY -> {
+                depth--;
+                if (depth == 0) {
+                    rootClosed = true;
+                } else if (depth == 1 && inDays) {
+                    inDays = false;
+                } else if (depth == 2 && inDays && dayBuffer != null) {
+                    JsonNode day = OBJECT_MAPPER.readTree(dayBuffer.asParser());
+                    dayBuffer = null;
+                    listener.onDay(day);
+                }
+            }
+            case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE, VALUE_NULL ->
+                    handleScalar(token);
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 校验对象或数组出现的位置是否符合计划结构
+     */
+    private void validateContainer(JsonToken token) throws IOException {
+        if (depth == 1 && isRootField("days") && token != JsonToken.START_ARRAY) {
+            throw new PlanFormatException("days必须是数组");
+        }
+        if (depth == 1 && (isRootField("destination") || isRootField("duration") || isRootField("totalBudget"))) {
+            throw new PlanFormatException(parser.currentName() + "必须是简单值");
+        }
+        if (depth == 2 && inDays && token != JsonToken.START_OBJECT) {
+            throw new PlanFormatException("days中的元素必须是对象");
+        }
+        if (depth == 3 && inDays && "activities".equals(parser.currentName())
+                && token != JsonToken.START_ARRAY) {
+            throw new PlanFormatException("activities必须是数组");
+        }
+    }
+
+    private void handleScalar(JsonToken token) throws IOException {
+        if (depth == 1) {
+            if (isRootField("days") && token != JsonToken.VALUE_NULL) {
+                throw new PlanFormatException("days必须是数组");
+            }
+            if (isRootField("destination") && token == JsonToken.VALUE_STRING) {
+                destination = parser.getText();
+                if (listener != null) {
+                    listener.onDestination(destination);
+                }
+            } else if (isRootField("duration") && token == JsonToken.VALUE_NUMBER_INT) {
+                duration = parser.getIntValue();
+                if (listener != null) {
+                    listener.onDuration(duration);
+                }
+            } else if (isRootField("totalBudget") && token.isNumeric()) {
+                totalBudget = parser.getDecimalValue();
+            }
+            return;
+        }
+
+        if (depth == 2 && inDays) {
+            throw new PlanFormatException("days中的元素必须是对象");
+        }
+
+        // days[].activities[].budget
+        if (depth == 5 && inDays && token.isNumeric()
+                && "budget".equals(parser.getParsingContext().getCurrentName())
+                && "activities".equals(parser.getParsingContext().getParent().getParent().getCurrentName())) {
+            activitiesBudget = activitiesBudget.add(parser.getDecimalValue());
+        }
+    }
+
+    /**
+     * 当前值对应的字段名，对象或数组的起始标记返回其所在字段
+     */
+    private boolean isRootField(String name) throws IOException {
+        return name.equals(parser.currentName());
+    }
+}
@@ -0,0 +1,216 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.TravelPlanRepository;
+import com.ai.travel.util.TravelRequestNormalizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热门目的地计划池
+ * 定时统计近期计划中出现最多的目的地与天数组合，在低峰期按token预算预生成计划；
+ * 只包含目的地和天数的简单需求直接从池中返回，不调用大模型；
+ * 计划池只在内存中，重启后为空，到下一次定时刷新前的请求照常调用大模型，避免每次启动都在高峰期消耗整份token预算
+ */
+@Component
+public class PopularPlanPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PopularPlanPool.class);
+
+    private final Map<String, PooledPlan> pool = new ConcurrentHashMap<>();
+
+    private final TravelPlanRepository travelPlanRepository;
+
+    private final AIService aiService;
+
+    private final ThreadPoolTaskExecutor planPoolExecutor;
+
+    // 多次触发的刷新不重叠执行
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final boolean enabled;
+
+    private final int topK;
+
+    private final Duration window;
+
+    private final Duration refreshAfter;
+
+    private final long tokenBudget;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final Counter tokenCounter;
+
+    public PopularPlanPool(TravelPlanRepository travelPlanRepository,
+                           AIService aiService,
+                           @Qualifier("planPoolExecutor") ThreadPoolTaskExecutor planPoolExecutor,
+                           @Value("${plan.pool.enabled:true}") boolean enabled,
+                           @Value("${plan.pool.top-k:20}") int topK,
+                           @Value("${plan.pool.window:30d}") Duration window,
+                           @Value("${plan.pool.refresh-after:20h}") Duration refreshAfter,
+                           @Value("${plan.pool.token-budget:200000}") long tokenBudget,
+                           MeterRegistry meterRegistry) {
+        this.travelPlanRepository = travelPlanRepository;
+        this.aiService = aiService;
+        this.planPoolExecutor = planPoolExecutor;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.window = window;
+        this.refreshAfter = refreshAfter;
+        this.tokenBudget = tokenBudget;
+
+        Gauge.builder("plan.pool.size", pool, Map::size)
+                .description("计划池中已就绪的计划数")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("plan.pool.requests").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("plan.pool.requests").tag("result", "miss").register(meterRegistry);
+        this.tokenCounter = Counter.builder("plan.pool.tokens")
+                .description("预生成计划实际消耗的token（含提示词与续写）")
+                .register(meterRegistry);
+    }
+
+    private record PooledPlan(String planData, Instant generatedAt) {
+    }
+
+    /**
+     * 查找可直接使用的预生成计划
+     * 只有除目的地和天数外没有其他要求（预算、偏好等）的需求才使用池中的计划
+     * @param travelRequest 旅行需求
+     * @return 计划JSON，不适用或未命中时返回null
+     */
+    public String find(String travelRequest) {
+        if (!enabled) {
+            return null;
+        }
+        TravelRequestNormalizer.CanonicalRequest canonical = TravelRequestNormalizer.canonicalize(travelRequest);
+        if (canonical.destination() == null || canonical.duration() == null
+                || canonical.budget() != null || !canonical.residual().isEmpty()) {
+            return null;
+        }
+
+        PooledPlan pooledPlan = pool.get(keyOf(canonical.destination(), canonical.duration()));
+        if (pooledPlan == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return pooledPlan.planData();
+    }
+
+    /**
+     * 低峰期定时触发刷新，在计划池专用线程上执行，不占用调度线程和异步生成任务的线程
+     */
+    @Scheduled(cron = "${plan.pool.refresh-cron:0 0 3 * * *}")
+    public void scheduleRefresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            planPoolExecutor.execute(this::refresh);
+        } catch (TaskRejectedException e) {
+            logger.info("Plan pool refresh already running, skipped");
+        }
+    }
+
+    /**
+     * 刷新计划池：淘汰不再热门的组合，按热度依次生成缺失或过旧的计划，直到用完token预算
+     * 只有剩余预算足够最坏情况（含续写与提示词）时才生成，扣除的是实际上报的用量
+     */
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            logger.info("Plan pool refresh already running, skipped");
+            return;
+        }
+        try {
+            doRefresh();
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private void doRefresh() {
+        List<TravelPlanRepository.DestinationPopularity> popular = travelPlanRepository.findPopularDestinations(
+                LocalDateTime.now().minus(window), PageRequest.of(0, topK));
+
+        Set<String> hotKeys = new HashSet<>();
+        for (TravelPlanRepository.DestinationPopularity item : popular) {
+            hotKeys.add(keyOf(item.getDestination(), item.getDuration()));
+        }
+        pool.keySet().retainAll(hotKeys);
+
+        long remaining = tokenBudget;
+        int generated = 0;
+        Instant staleBefore = Instant.now().minus(refreshAfter);
+        for (TravelPlanRepository.DestinationPopularity item : popular) {
+            String key = keyOf(item.getDestination(), item.getDuration());
+            PooledPlan existing = pool.get(key);
+            if (existing != null && existing.generatedAt().isAfter(staleBefore)) {
+                continue;
+            }
+
+            String travelRequest = item.getDestination() + item.getDuration() + "天旅行";
+            long estimatedTokens = aiService.estimatePlanTokens(travelRequest);
+            if (estimatedTokens > remaining) {
+                logger.info("Plan pool token budget exhausted, {} tokens left, next plan may need {}",
+                        remaining, estimatedTokens);
+                break;
+            }
+
+            LongAdder tokenUsage = new LongAdder();
+            try {
+                AIService.ParsedPlan parsedPlan = aiService.parsePlan(
+                        aiService.generateTravelPlan(travelRequest, tokenUsage), travelRequest);
+                if (!parsedPlan.fallback()) {
+                    pool.put(key, new PooledPlan(parsedPlan.planData(), Instant.now()));
+                    generated++;
+                }
+            } catch (Exception e) {
+                logger.warn("Pre-generating plan for {} failed: {}", key, e.getMessage());
+            } finally {
+                // 失败的调用也可能已消耗token；没有上报用量时按最坏情况扣除
+                long usedTokens = tokenUsage.sum() > 0 ? tokenUsage.sum() : estimatedTokens;
+                remaining -= usedTokens;
+                tokenCounter.increment(usedTokens);
+            }
+        }
+        logger.info("Plan pool refreshed: {} generated, {} pooled, {} hot combinations",
+                generated, pool.size(), popular.size());
+    }
+
+    /**
+     * 计划池的键：规范化后的目的地（去掉“市”后缀）与天数
+     */
+    private String keyOf(String destination, Integer duration) {
+        String normalized = TravelRequestNormalizer.normalize(destination);
+        if (normalized.length() > 2 && normalized.endsWith("市")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized + "|" + duration;
+    }
+}
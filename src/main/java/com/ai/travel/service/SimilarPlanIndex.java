@@ -0,0 +1,203 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import com.ai.travel.repository.TravelPlanRepository;
+import com.ai.travel.util.TravelRequestNormalizer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 按用户划分的旅行需求倒排索引，用于相似计划检测
+ * 中文按相邻两字切分、字母数字按单词切分，相似度为按IDF加权的Jaccard系数；
+ * 用户的索引在首次查询时从数据库构建，之后随计划的创建与删除增量更新，长时间未访问后释放
+ */
+@Component
+public class SimilarPlanIndex {
+
+    private final TravelPlanRepository travelPlanRepository;
+
+    private final double threshold;
+
+    private final Cache<Long, UserIndex> indexes;
+
+    public SimilarPlanIndex(TravelPlanRepository travelPlanRepository,
+                            @Value("${plan.similarity.threshold:0.6}") double threshold,
+                            @Value("${plan.similarity.max-users:10000}") long maxUsers,
+                            @Value("${plan.similarity.idle-ttl:30m}") Duration idleTtl,
+                            MeterRegistry meterRegistry) {
+        this.travelPlanRepository = travelPlanRepository;
+        this.threshold = threshold;
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(idleTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "plan.similarity.index");
+    }
+
+    /**
+     * 查找与旅行需求最相似的计划
+     * @param user 当前用户
+     * @param travelRequest 旅行需求
+     * @return 相似度达到阈值的最相似计划ID
+     */
+    public Optional<Long> findMostSimilar(User user, String travelRequest) {
+        Set<String> terms = extractTerms(travelRequest);
+        if (terms.isEmpty()) {
+            return Optional.empty();
+        }
+        return indexOf(user).findMostSimilar(terms, threshold);
+    }
+
+    /**
+     * 计划保存后加入索引；该用户的索引尚未构建时跳过，构建时会从数据库读到
+     */
+    public void add(TravelPlan travelPlan) {
+        UserIndex index = indexes.getIfPresent(travelPlan.getUser().getId());
+        if (index != null && travelPlan.getId() != null) {
+            index.add(travelPlan.getId(), extractTerms(travelPlan.getTravelRequest()));
+        }
+    }
+
+    /**
+     * 计划删除后移出索引
+     */
+    public void remove(User user, Long planId) {
+        UserIndex index = indexes.getIfPresent(user.getId());
+        if (index != null) {
+            index.remove(planId);
+        }
+    }
+
+    private UserIndex indexOf(User user) {
+        return indexes.get(user.getId(), userId -> {
+            UserIndex index = new UserIndex();
+            for (TravelPlanRepository.TravelRequestRow row : travelPlanRepository.findTravelRequestRowsByUser(user)) {
+                index.add(row.getId(), extractTerms(row.getTravelRequest()));
+            }
+            return index;
+        });
+    }
+
+    /**
+     * 切分索引词：连续汉字取相邻两字（单个汉字保留本身），字母数字取完整单词
+     */
+    static Set<String> extractTerms(String travelRequest) {
+        Set<String> terms = new HashSet<>();
+        String text = TravelRequestNormalizer.normalize(travelRequest);
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int start = i;
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                while (i < text.length() && Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    terms.add(text.substring(start, i));
+                }
+                for (int j = start; j + 1 < i; j++) {
+                    terms.add(text.substring(j, j + 2));
+                }
+            } else if (isAsciiLetterOrDigit(c)) {
+                while (i < text.length() && isAsciiLetterOrDigit(text.charAt(i))) {
+                    i++;
+                }
+                terms.add(text.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * 单个用户的倒排索引
+     */
+    private static final class UserIndex {
+
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+
+        private final Map<Long, Set<String>> documents = new HashMap<>();
+
+        synchronized void add(Long planId, Set<String> terms) {
+            remove(planId);
+            documents.put(planId, terms);
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new HashSet<>()).add(planId);
+            }
+        }
+
+        synchronized void remove(Long planId) {
+            Set<String> terms = documents.remove(planId);
+            if (terms == null) {
+                return;
+            }
+            for (String term : terms) {
+                Set<Long> ids = postings.get(term);
+                if (ids != null) {
+                    ids.remove(planId);
+                    if (ids.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 只对至少共享一个索引词的计划打分：交集的IDF权重之和 / 并集的IDF权重之和
+         */
+        synchronized Optional<Long> findMostSimilar(Set<String> queryTerms, double threshold) {
+            Map<Long, Double> shared = new HashMap<>();
+            double queryWeight = 0;
+            for (String term : queryTerms) {
+                double weight = idf(term);
+                queryWeight += weight;
+                Set<Long> ids = postings.get(term);
+                if (ids != null) {
+                    for (Long id : ids) {
+                        shared.merge(id, weight, Double::sum);
+                    }
+                }
+            }
+
+            Long bestId = null;
+            double bestScore = 0;
+            for (Map.Entry<Long, Double> entry : shared.entrySet()) {
+                double documentWeight = 0;
+                for (String term : documents.get(entry.getKey())) {
+                    documentWeight += idf(term);
+                }
+                double intersection = entry.getValue();
+                double score = intersection / (queryWeight + documentWeight - intersection);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestId = entry.getKey();
+                }
+            }
+            return bestScore >= threshold ? Optional.of(bestId) : Optional.empty();
+        }
+
+        private double idf(String term) {
+            Set<Long> ids = postings.get(term);
+            int documentFrequency = ids == null ? 0 : ids.size();
+            return Math.log(1.0 + (documents.size() + 1.0) / (documentFrequency + 1.0));
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package com.ai.travel.service;
 
 import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.exception.AiServiceUnavailableException;
+import com.ai.travel.exception.PlanFormatException;
 import com.ai.travel.entity.User;
+import com.ai.travel.repository.ExpenseRollupRepository;
 import com.ai.travel.repository.TravelPlanRepository;
 import com.ai.travel.repository.UserRepository;
+import com.ai.travel.util.ContentHash;
+import com.ai.travel.util.TravelRequestNormalizer;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class TravelPlanService {
 
+    private static final Logger logger = LoggerFactory.getLogger(TravelPlanService.class);
+
     @Autowired
     private TravelPlanRepository travelPlanRepository;
 
@@ -25,23 +47,106 @@ public class TravelPlanService {
     @Autowired
     private AIService aiService;
 
+    @Autowired
+    private PlanRequestCoalescer planRequestCoalescer;
+
+    @Autowired
+    private PlanItineraryService planItineraryService;
+
+    @Autowired
+    private PlanGenerationCache planGenerationCache;
+
+    @Autowired
+    private PopularPlanPool popularPlanPool;
+
+    @Autowired
+    private SimilarPlanIndex similarPlanIndex;
+
+    @Autowired
+    private NearDuplicatePlanIndex nearDuplicatePlanIndex;
+
+    @Autowired
+    private PlanDataCompressor planDataCompressor;
+
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+
+    @Value("${plan.near-duplicate.redate:true}")
+    private boolean redateNearDuplicates;
+
+    @Value("${plan.list.max-page-size:100}")
+    private int maxPageSize;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * 创建新的旅行计划
      */
     public TravelPlan createTravelPlan(User user, String travelRequest) {
-        // 调用AI服务生成旅行计划
-        String aiResponse = aiService.generateTravelPlan(travelRequest);
-        String planData = aiService.parseAIPlan(aiResponse, travelRequest);
+        return createTravelPlan(user, travelRequest, false);
+    }
+
+    /**
+     * 创建新的旅行计划
+     * @param forceRegenerate 为true时跳过生成缓存并用新结果刷新缓存
+     */
+    public TravelPlan createTravelPlan(User user, String travelRequest, boolean forceRegenerate) {
+        TravelPlan savedPlan = planItineraryService.saveWithItinerary(prepareTravelPlan(user, travelRequest, forceRegenerate));
+        indexSavedPlan(savedPlan);
+        return savedPlan;
+    }
+
+    /**
+     * 生成旅行计划但不保存，供批量生成后统一落库
+     * @param forceRegenerate 为true时跳过生成缓存并用新结果刷新缓存
+     */
+    public TravelPlan prepareTravelPlan(User user, String travelRequest, boolean forceRegenerate) {
+        AIService.ParsedPlan parsedPlan;
+        try {
+            parsedPlan = generatePlan(travelRequest, forceRegenerate);
+        } catch (AiServiceUnavailableException e) {
+            // 豆包不可用时返回兜底计划，并在结果上标记
+            logger.warn("AI service unavailable, serving fallback plan: {}", e.getMessage());
+            parsedPlan = AIService.ParsedPlan.fallback(aiService.generateMockPlan(travelRequest));
+        }
+        return buildTravelPlan(user, travelRequest, parsedPlan);
+    }
+
+    /**
+     * 在同一事务中保存多个旅行计划
+     */
+    @Transactional
+    public List<TravelPlan> saveTravelPlans(List<TravelPlan> travelPlans) {
+        List<TravelPlan> savedPlans = planItineraryService.saveAllWithItinerary(travelPlans);
+        savedPlans.forEach(this::indexSavedPlan);
+        return savedPlans;
+    }
+
+    /**
+     * 解析AI返回的内容并保存为旅行计划（流式生成结束后也通过此方法落库）
+     */
+    public TravelPlan saveGeneratedPlan(User user, String travelRequest, String aiResponse) {
+        TravelPlan savedPlan = planItineraryService.saveWithItinerary(
+                buildTravelPlan(user, travelRequest, aiService.parsePlan(aiResponse, travelRequest)));
+        indexSavedPlan(savedPlan);
+        return savedPlan;
+    }
+
+    /**
+     * 由解析后的计划数据构建旅行计划实体
+     */
+    private TravelPlan buildTravelPlan(User user, String travelRequest, AIService.ParsedPlan parsedPlan) {
+        String planData = parsedPlan.planData();
 
-        // 解析计划数据
-        JsonNode planJson = parseJson(planData);
+        // 解析计划数据；AI返回的内容在修复时已解析过，直接复用
+        PlanStreamParser.PlanDocument document = parsedPlan.document() != null
+                ? parsedPlan.document() : parsePlanDocument(planData);
+        PlanStreamParser.PlanSummary summary = document.summary();
 
         // 提取字段
-        String destination = extractDestination(planJson);
-        Integer duration = extractDuration(planJson);
-        BigDecimal totalBudget = extractTotalBudget(planJson);
+        String destination = extractDestination(summary);
+        Integer duration = extractDuration(summary);
+        BigDecimal totalBudget = extractTotalBudget(summary);
 
         // 创建旅行计划实体
         TravelPlan travelPlan = new TravelPlan(
@@ -53,14 +158,67 @@ public class TravelPlanService {
                 planData
         );
 
-        return travelPlanRepository.save(travelPlan);
+        travelPlan.setFallback(parsedPlan.fallback());
+        travelPlan.setParsedPlanData(document.plan());
+        planDataCompressor.apply(travelPlan);
+        return travelPlan;
+    }
+
+    /**
+     * 分页获取用户的旅行计划列表（按创建时间倒序），只查询列表需要的字段
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param size 每页数量，超过上限时按上限返回
+     * @throws IllegalArgumentException 游标无效
+     */
+    public PlanPage getUserTravelPlanPage(User user, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        // 多取一条用于判断是否还有下一页
+        PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+
+        List<TravelPlanRepository.TravelPlanSummary> plans;
+        if (cursor == null || cursor.isEmpty()) {
+            plans = travelPlanRepository.findSummariesByUser(user, pageRequest);
+        } else {
+            PlanCursor planCursor = PlanCursor.decode(cursor);
+            plans = travelPlanRepository.findSummariesByUserAfter(user, planCursor.createdAt(), planCursor.id(), pageRequest);
+        }
+
+        if (plans.size() <= pageSize) {
+            return new PlanPage(plans, null);
+        }
+        plans = plans.subList(0, pageSize);
+        TravelPlanRepository.TravelPlanSummary last = plans.get(pageSize - 1);
+        return new PlanPage(plans, new PlanCursor(last.getCreatedAt(), last.getId()).encode());
     }
 
     /**
-     * 根据用户ID获取所有旅行计划
+     * 计划列表的一页
+     * @param plans 本页计划
+     * @param nextCursor 下一页的游标，没有更多数据时为null
      */
-    public List<TravelPlan> getUserTravelPlans(User user) {
-        return travelPlanRepository.findByUserOrderByCreatedAtDesc(user);
+    public record PlanPage(List<TravelPlanRepository.TravelPlanSummary> plans, String nextCursor) {
+    }
+
+    /**
+     * 分页游标：上一页最后一条的创建时间与ID，编码为URL安全的Base64
+     */
+    private record PlanCursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PlanCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new PlanCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.valueOf(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("分页游标无效", e);
+            }
+        }
     }
 
     /**
@@ -70,111 +228,237 @@ public class TravelPlanService {
         return travelPlanRepository.findByIdAndUser(id, user);
     }
 
+    /**
+     * 获取旅行计划某一天的行程（确保属于当前用户），只读取物化后的当天数据
+     */
+    public Optional<Map<String, Object>> getTravelPlanDay(Long id, User user, Integer dayNumber) {
+        if (!travelPlanRepository.existsByIdAndUser(id, user)) {
+            return Optional.empty();
+        }
+        return planItineraryService.getDay(id, dayNumber);
+    }
+
     /**
      * 获取用户最近创建的旅行计划
      */
     public Optional<TravelPlan> getLatestTravelPlan(User user) {
-        return travelPlanRepository.findFirstByUserOrderByCreatedAtDesc(user);
+        return travelPlanRepository.findFirstByUserOrderByCreatedAtDescIdDesc(user);
+    }
+
+    /**
+     * 计划的ETag（确保属于当前用户），只查询ID、版本号与更新时间，不加载计划数据
+     */
+    public Optional<String> getTravelPlanETag(Long id, User user) {
+        return travelPlanRepository.findVersionByIdAndUser(id, user).map(this::toETag);
+    }
+
+    /**
+     * 用户最近创建的计划的ETag，只查询ID、版本号与更新时间，不加载计划数据
+     */
+    public Optional<String> getLatestTravelPlanETag(User user) {
+        return travelPlanRepository.findLatestVersionByUser(user, PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .map(this::toETag);
+    }
+
+    /**
+     * 判断已加载的计划是否仍是该ETag对应的版本
+     */
+    public boolean hasETag(TravelPlan travelPlan, String eTag) {
+        return eTag.equals(getETag(travelPlan));
+    }
+
+    /**
+     * 已加载的计划的ETag
+     */
+    public String getETag(TravelPlan travelPlan) {
+        return toETag(travelPlan.getId(), travelPlan.getVersion(), travelPlan.getUpdatedAt());
+    }
+
+    private String toETag(TravelPlanRepository.PlanVersion planVersion) {
+        return toETag(planVersion.getId(), planVersion.getVersion(), planVersion.getUpdatedAt());
+    }
+
+    private String toETag(Long id, Long version, LocalDateTime updatedAt) {
+        long updatedAtMillis = updatedAt == null ? 0 : updatedAt.toInstant(ZoneOffset.UTC).toEpochMilli();
+        return "plan-" + id + "-" + version + "-" + Long.toHexString(updatedAtMillis);
     }
 
     /**
      * 检查是否存在完全相同的旅行计划（避免重复生成）
      */
     public boolean hasExactSamePlan(User user, String travelRequest) {
-        List<TravelPlan> exactPlans = travelPlanRepository.findByUserAndTravelRequestOrderByCreatedAtDesc(user, travelRequest);
-        return !exactPlans.isEmpty();
+        return findExactSamePlanId(user, travelRequest).isPresent();
+    }
+
+    /**
+     * 查找需求完全相同的最新计划ID，通过(user_id, travel_request_hash)索引定位，不加载计划数据
+     */
+    public Optional<Long> findExactSamePlanId(User user, String travelRequest) {
+        List<Long> ids = travelPlanRepository.findIdsByUserAndTravelRequestHash(
+                user, ContentHash.sha256Hex(travelRequest), travelRequest, PageRequest.of(0, 1));
+        return ids.stream().findFirst();
     }
     
     /**
-     * 检查是否存在相似的旅行计划（避免重复生成）
+     * 通过倒排索引查找用户最相似的已有计划（避免重复生成），兜底计划不作为相似计划返回
+     * 文本相似不代表行程相同（如“北京三天游”与“北京五天游”），目的地、天数和预算的规范形式须一致；
+     * 索引可能晚于其他实例上的删除，计划已不存在时返回空
      */
-    public boolean hasSimilarPlan(User user, String travelRequest) {
-        // 首先检查是否有完全相同的计划
-        if (hasExactSamePlan(user, travelRequest)) {
-            return true;
-        }
-        
-        // 如果没有完全相同的，再检查是否有相似的
-        String[] keywords = extractKeywords(travelRequest);
-        for (String keyword : keywords) {
-            List<TravelPlan> similarPlans = travelPlanRepository.findSimilarPlansByUserAndKeyword(user, keyword);
-            if (!similarPlans.isEmpty()) {
-                return true;
-            }
-        }
-        return false;
+    public Optional<TravelPlan> findSimilarPlan(User user, String travelRequest) {
+        TravelRequestNormalizer.CanonicalRequest canonical = TravelRequestNormalizer.canonicalize(travelRequest);
+        return similarPlanIndex.findMostSimilar(user, travelRequest)
+                .flatMap(id -> travelPlanRepository.findByIdAndUser(id, user))
+                .filter(travelPlan -> !travelPlan.isFallback())
+                .filter(travelPlan -> canonical.sameTrip(
+                        TravelRequestNormalizer.canonicalize(travelPlan.getTravelRequest())));
     }
 
     /**
      * 删除旅行计划
      */
+    @Transactional
     public void deleteTravelPlan(Long id, User user) {
         travelPlanRepository.findByIdAndUser(id, user)
-                .ifPresent(travelPlanRepository::delete);
+                .ifPresent(travelPlan -> {
+                    planItineraryService.deleteItinerary(id);
+                    expenseRollupRepository.deleteByTravelPlanId(id);
+                    travelPlanRepository.delete(travelPlan);
+                    afterCommit(() -> {
+                        similarPlanIndex.remove(user, id);
+                        nearDuplicatePlanIndex.remove(id);
+                    });
+                });
     }
 
     /**
-     * 使用 Jackson 安全解析 JSON
+     * 计划保存后更新相似计划索引；兜底计划不参与跨用户复用
      */
-    private JsonNode parseJson(String jsonStr) {
+    private void indexSavedPlan(TravelPlan travelPlan) {
+        afterCommit(() -> {
+            similarPlanIndex.add(travelPlan);
+            if (travelPlan.isKnownGenerated()) {
+                nearDuplicatePlanIndex.add(travelPlan.getId(), travelPlan.getTravelRequest());
+            }
+        });
+    }
+
+    /**
+     * 在当前事务提交后执行，事务回滚时不执行，避免内存索引指向不存在的计划；没有事务时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 获取AI生成并修复后的计划：优先使用热门计划池、跨用户缓存与近似重复的已有计划，
+     * 否则调用AI服务（并发的相同需求共享同一次调用）
+     */
+    private AIService.ParsedPlan generatePlan(String travelRequest, boolean forceRegenerate) {
+        if (!forceRegenerate) {
+            String pooled = popularPlanPool.find(travelRequest);
+            if (pooled != null) {
+                return new AIService.ParsedPlan(pooled, false, List.of());
+            }
+
+            String cached = planGenerationCache.get(travelRequest);
+            if (cached != null) {
+                return new AIService.ParsedPlan(cached, false, List.of());
+            }
+
+            Optional<String> nearDuplicate = nearDuplicatePlanIndex.findNearDuplicate(travelRequest)
+                    .flatMap(travelPlanRepository::findById)
+                    .filter(TravelPlan::isKnownGenerated)
+                    .map(TravelPlan::getPlanData);
+            if (nearDuplicate.isPresent()) {
+                String planData = redateNearDuplicates ? redate(nearDuplicate.get()) : nearDuplicate.get();
+                return new AIService.ParsedPlan(planData, false, List.of());
+            }
+        }
+
+        String aiResponse = planRequestCoalescer.execute(travelRequest,
+                () -> aiService.generateTravelPlan(travelRequest));
+        AIService.ParsedPlan parsedPlan = aiService.parsePlan(aiResponse, travelRequest);
+
+        // 只缓存可用的结果，避免把兜底数据共享给其他用户
+        if (!parsedPlan.fallback()) {
+            planGenerationCache.put(travelRequest, parsedPlan.planData());
+        }
+        return parsedPlan;
+    }
+
+    /**
+     * 把复用计划的日期改为从今天开始，保持各天之间的间隔
+     */
+    private String redate(String planData) {
         try {
-            return objectMapper.readTree(jsonStr);
-        } catch (Exception e) {
-            return objectMapper.createObjectNode(); // 返回空 JSON 节点
+            JsonNode plan = objectMapper.readTree(planData);
+            LocalDate date = LocalDate.now();
+            for (JsonNode day : plan.path("days")) {
+                if (day instanceof ObjectNode dayNode) {
+                    dayNode.put("date", date.toString());
+                    date = date.plusDays(1);
+                }
+            }
+            return objectMapper.writeValueAsString(plan);
+        } catch (JsonProcessingException e) {
+            return planData;
+        }
+    }
+
+    /**
+     * 一遍解析计划JSON，同时得到计划树（供物化每日行程）和需要的字段
+     */
+    private PlanStreamParser.PlanDocument parsePlanDocument(String planData) {
+        try {
+            return PlanStreamParser.parseDocument(planData);
+        } catch (PlanFormatException e) {
+            return new PlanStreamParser.PlanDocument(null,
+                    new PlanStreamParser.PlanSummary(null, null, null, BigDecimal.ZERO, 0));
         }
     }
 
     /**
-     * 从 JSON 提取目的地
+     * 提取目的地
      */
-    private String extractDestination(JsonNode jsonNode) {
-        JsonNode destNode = jsonNode.path("destination");
-        if (!destNode.isMissingNode() && !destNode.asText().isEmpty()) {
-            return destNode.asText();
+    private String extractDestination(PlanStreamParser.PlanSummary summary) {
+        if (summary.destination() != null && !summary.destination().isEmpty()) {
+            return summary.destination();
         }
         return "未知目的地";
     }
 
     /**
-     * 从 JSON 提取行程天数
+     * 提取行程天数
      */
-    private Integer extractDuration(JsonNode jsonNode) {
-        JsonNode durationNode = jsonNode.path("duration");
-        if (durationNode.isInt()) {
-            return durationNode.asInt();
+    private Integer extractDuration(PlanStreamParser.PlanSummary summary) {
+        if (summary.duration() != null) {
+            return summary.duration();
         }
         return 3; // 默认3天
     }
 
     /**
-     * 从 JSON 提取总预算
+     * 提取总预算
      */
-    private BigDecimal extractTotalBudget(JsonNode jsonNode) {
+    private BigDecimal extractTotalBudget(PlanStreamParser.PlanSummary summary) {
         // 1. 优先使用显式 totalBudget 字段
-        JsonNode budgetNode = jsonNode.path("totalBudget");
-        if (budgetNode.isNumber()) {
-            BigDecimal value = budgetNode.decimalValue();
-            if (value.compareTo(BigDecimal.ZERO) > 0) {
-                return value;
-            }
+        BigDecimal value = summary.totalBudget();
+        if (value != null && value.compareTo(BigDecimal.ZERO) > 0) {
+            return value;
         }
 
-        // 2. 若未提供 totalBudget，则根据 days[].activities[].budget 汇总
-        BigDecimal total = BigDecimal.ZERO;
-        JsonNode days = jsonNode.path("days");
-        if (days.isArray()) {
-            for (JsonNode day : days) {
-                JsonNode activities = day.path("activities");
-                if (activities.isArray()) {
-                    for (JsonNode activity : activities) {
-                        JsonNode budget = activity.path("budget");
-                        if (budget.isNumber()) {
-                            total = total.add(budget.decimalValue());
-                        }
-                    }
-                }
-            }
-        }
+        // 2. 若未提供 totalBudget，则使用 days[].activities[].budget 汇总
+        BigDecimal total = summary.activitiesBudget();
 
         // 如果总和仍为 0，则设定一个合理默认值
         if (total.compareTo(BigDecimal.ZERO) == 0) {
@@ -183,13 +467,4 @@ public class TravelPlanService {
 
         return total;
     }
-
-    /**
-     * 从旅行需求中提取关键词
-     */
-    private String[] extractKeywords(String travelRequest) {
-        return travelRequest.toLowerCase()
-                .replaceAll("[^\\u4e00-\\u9fa5a-zA-Z0-9]", " ")
-                .split("\\s+");
-    }
 }
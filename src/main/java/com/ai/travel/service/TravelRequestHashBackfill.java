@@ -0,0 +1,47 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.TravelPlanRepository;
+import com.ai.travel.util.ContentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 为新增travel_request_hash列之前创建的计划回填旅行需求哈希
+ * 启动后分批执行，已回填的行不再被查询到，重启后可继续
+ */
+@Component
+public class TravelRequestHashBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(TravelRequestHashBackfill.class);
+
+    @Autowired
+    private TravelPlanRepository travelPlanRepository;
+
+    @Value("${plan.backfill.batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int total = 0;
+        List<TravelPlanRepository.TravelRequestRow> rows;
+        do {
+            rows = travelPlanRepository.findRowsWithoutTravelRequestHash(PageRequest.of(0, batchSize));
+            for (TravelPlanRepository.TravelRequestRow row : rows) {
+                travelPlanRepository.updateTravelRequestHash(row.getId(), ContentHash.sha256Hex(row.getTravelRequest()));
+            }
+            total += rows.size();
+        } while (rows.size() == batchSize);
+
+        if (total > 0) {
+            logger.info("Backfilled travel request hash for {} plans", total);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.ai.travel.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick多模式匹配器
+ * 构建后只读，可在多线程间共享；一次扫描文本即可找出所有模式的出现位置，耗时与模式数量无关
+ * @param <T> 模式关联的值
+ */
+public final class AhoCorasickMatcher<T> {
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * @param patterns 模式及其关联的值，模式需与待匹配文本使用相同的规范化方式
+     */
+    public AhoCorasickMatcher(Map<String, T> patterns) {
+        for (Map.Entry<String, T> entry : patterns.entrySet()) {
+            String pattern = entry.getKey();
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            Node<T> node = root;
+            for (int i = 0; i < pattern.length(); i++) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Node<>());
+            }
+            node.outputs.add(new Match<>(pattern, entry.getValue(), 0, pattern.length()));
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * 查找文本中所有模式的出现
+     * @param text 待匹配文本
+     * @return 按结束位置排序的匹配结果
+     */
+    public List<Match<T>> findAll(String text) {
+        List<Match<T>> matches = new ArrayList<>();
+        Node<T> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != root && !node.children.containsKey(c)) {
+                node = node.failure;
+            }
+            node = node.children.getOrDefault(c, root);
+            for (Match<T> output : node.outputs) {
+                int end = i + 1;
+                matches.add(new Match<>(output.pattern(), output.value(), end - output.pattern().length(), end));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 广度优先建立失配指针，并把失配节点的输出合并到当前节点
+     */
+    private void buildFailureLinks() {
+        Queue<Node<T>> queue = new ArrayDeque<>();
+        root.failure = root;
+        for (Node<T> child : root.children.values()) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.poll();
+            for (Map.Entry<Character, Node<T>> entry : node.children.entrySet()) {
+                char c = entry.getKey();
+                Node<T> child = entry.getValue();
+                Node<T> failure = node.failure;
+                while (failure != root && !failure.children.containsKey(c)) {
+                    failure = failure.failure;
+                }
+                Node<T> target = failure.children.get(c);
+                child.failure = target != null && target != child ? target : root;
+                child.outputs.addAll(child.failure.outputs);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 一次匹配
+     * @param pattern 命中的模式
+     * @param value 模式关联的值
+     * @param start 起始位置（含）
+     * @param end 结束位置（不含）
+     */
+    public record Match<T>(String pattern, T value, int start, int end) {
+    }
+
+    private static final class Node<T> {
+
+        private final Map<Character, Node<T>> children = new HashMap<>();
+
+        private final List<Match<T>> outputs = new ArrayList<>();
+
+        private Node<T> failure;
+    }
+}
@@ -0,0 +1,133 @@
+package com.ai.travel.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩存储的JSON文本
+ * 格式为1字节字典版本号加deflate数据，压缩时使用预置字典（计划JSON中高频出现的字段名与词汇），
+ * 对几KB的短文本比无字典的deflate压缩率明显更高；首次读取时才解压，结果缓存在实例中
+ */
+public final class CompressedJson implements Serializable {
+
+    private static final byte DICTIONARY_VERSION = 1;
+
+    // 已写入数据库的数据依赖字典内容，字典文件只能新增版本，不能修改
+    private static final byte[] DICTIONARY_V1 = loadDictionary("plan-storage/dictionary-v1.txt");
+
+    private final byte[] bytes;
+
+    private transient volatile String json;
+
+    private CompressedJson(byte[] bytes, String json) {
+        this.bytes = bytes;
+        this.json = json;
+    }
+
+    /**
+     * 压缩JSON文本
+     */
+    public static CompressedJson compress(String json) {
+        byte[] input = json.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+            output.write(DICTIONARY_VERSION);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            return new CompressedJson(output.toByteArray(), json);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 包装从数据库读出的压缩数据，此时不解压
+     */
+    public static CompressedJson fromBytes(byte[] bytes) {
+        return new CompressedJson(bytes, null);
+    }
+
+    /**
+     * 压缩后的字节
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * 解压后的JSON文本，首次调用时解压
+     */
+    public String json() {
+        String result = json;
+        if (result == null) {
+            result = inflate(bytes);
+            json = result;
+        }
+        return result;
+    }
+
+    private static String inflate(byte[] bytes) {
+        if (bytes.length == 0 || bytes[0] != DICTIONARY_VERSION) {
+            throw new IllegalStateException("不支持的压缩数据版本");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY_V1);
+                    } else if (inflater.needsInput() && !inflater.finished()) {
+                        throw new IllegalStateException("压缩数据不完整");
+                    }
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩数据已损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] loadDictionary(String path) {
+        try (InputStream inputStream = CompressedJson.class.getClassLoader().getResourceAsStream(path)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("缺少压缩字典: " + path);
+            }
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CompressedJson other && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ai.travel.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 内容哈希工具
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    /**
+     * 计算文本UTF-8编码的SHA-256摘要
+     * @param text 文本，为null时返回null
+     * @return 64位小写十六进制字符串
+     */
+    public static String sha256Hex(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // 所有JVM实现都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
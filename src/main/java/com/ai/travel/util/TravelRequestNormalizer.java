@@ -0,0 +1,253 @@
+package com.ai.travel.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 旅行需求文本规范化工具
+ */
+public final class TravelRequestNormalizer {
+
+    private static final String NUMBER = "\\d+|[零一二两三四五六七八九十百千万]+";
+
+    /**
+     * 数字前不能是月或号，避免把“10月1日”“3号”这类日期当作天数；优先按“天/days”识别，“日”只作后备（如“五日游”）
+     */
+    private static final String NOT_AFTER_DATE = "(?<![月号\\d零一二两三四五六七八九十百千万])";
+
+    private static final Pattern DURATION_PATTERN = Pattern.compile(
+            NOT_AFTER_DATE + "(" + NUMBER + ")\\s*(?:天|days?)");
+
+    private static final Pattern DAY_DURATION_PATTERN = Pattern.compile(
+            NOT_AFTER_DATE + "(" + NUMBER + ")\\s*日");
+
+    private static final Pattern BUDGET_PATTERN = Pattern.compile(
+            "预算\\s*(?:约|大约|为|是)?\\s*(" + NUMBER + ")\\s*(?:元|块|rmb)?\\s*(?:左右|以内)?");
+
+    private static final Pattern PUNCTUATION_PATTERN = Pattern.compile("[\\p{P}\\p{S}\\s]+");
+
+    /**
+     * 不影响行程内容的口语化词汇，按长度从长到短匹配
+     */
+    private static final List<String> FILLER_WORDS = List.of(
+            "帮我规划", "帮我安排", "我想要去", "我想去", "我要去", "想去", "帮我", "我想", "我要", "请",
+            "规划", "计划", "一下", "一个", "安排", "行程", "旅游", "旅行", "游玩", "自由行", "之旅",
+            "去", "到", "游", "玩", "的");
+
+    /**
+     * 已知目的地的各种写法（中文名、别称、拼音或英文名）到目的地名称，与兜底计划模板共用同一份别名表
+     */
+    private static final String DESTINATIONS_RESOURCE = "plan-templates/destinations.json";
+
+    private static final AhoCorasickMatcher<String> DESTINATIONS = loadDestinations();
+
+    private TravelRequestNormalizer() {
+    }
+
+    /**
+     * 规范化旅行需求文本：全角转半角、统一小写、合并空白
+     * @param travelRequest 原始旅行需求
+     * @return 规范化后的文本
+     */
+    public static String normalize(String travelRequest) {
+        if (travelRequest == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(travelRequest, Normalizer.Form.NFKC);
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    /**
+     * 将旅行需求归一为规范形式：提取目的地、天数和预算，其余内容去除标点与口语化词汇
+     * 例如“北京三天游，预算3000”与“三天北京旅行 预算三千”得到相同的规范形式
+     * @param travelRequest 原始旅行需求
+     * @return 规范形式
+     */
+    public static CanonicalRequest canonicalize(String travelRequest) {
+        String text = normalize(travelRequest);
+
+        Integer duration = null;
+        Matcher durationMatcher = DURATION_PATTERN.matcher(text);
+        boolean durationFound = durationMatcher.find();
+        if (!durationFound) {
+            durationMatcher = DAY_DURATION_PATTERN.matcher(text);
+            durationFound = durationMatcher.find();
+        }
+        if (durationFound) {
+            duration = parseNumber(durationMatcher.group(1));
+            text = durationMatcher.replaceFirst(" ");
+        }
+
+        Integer budget = null;
+        Matcher budgetMatcher = BUDGET_PATTERN.matcher(text);
+        if (budgetMatcher.find()) {
+            budget = parseNumber(budgetMatcher.group(1));
+            text = budgetMatcher.replaceFirst(" ");
+        }
+
+        // 只识别已知目的地，未知地名留在其余内容中，不同地名的需求仍得到不同的规范形式
+        String destination = null;
+        AhoCorasickMatcher.Match<String> destinationMatch = matchDestination(text);
+        if (destinationMatch != null) {
+            destination = destinationMatch.value();
+            text = text.substring(0, destinationMatch.start()) + " " + text.substring(destinationMatch.end());
+        }
+
+        text = PUNCTUATION_PATTERN.matcher(text).replaceAll(" ");
+        for (String filler : FILLER_WORDS) {
+            text = text.replace(filler, "");
+        }
+
+        String residual = text.replace(" ", "");
+        return new CanonicalRequest(destination, duration, budget, residual);
+    }
+
+    /**
+     * 识别文本中的已知目的地
+     * @param travelRequest 旅行需求
+     * @return 目的地名称，未识别到已知目的地时返回null
+     */
+    public static String findDestination(String travelRequest) {
+        AhoCorasickMatcher.Match<String> match = matchDestination(normalize(travelRequest));
+        return match != null ? match.value() : null;
+    }
+
+    /**
+     * 取最早出现的目的地，同一位置取最长的写法；拼音或英文名需是完整的单词
+     */
+    private static AhoCorasickMatcher.Match<String> matchDestination(String text) {
+        AhoCorasickMatcher.Match<String> best = null;
+        for (AhoCorasickMatcher.Match<String> match : DESTINATIONS.findAll(text)) {
+            if (!isWholeWord(text, match)) {
+                continue;
+            }
+            if (best == null || match.start() < best.start()
+                    || (match.start() == best.start() && match.end() > best.end())) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isWholeWord(String text, AhoCorasickMatcher.Match<String> match) {
+        if (!isAsciiLetter(match.pattern().charAt(0))) {
+            return true;
+        }
+        boolean startsWord = match.start() == 0 || !isAsciiLetter(text.charAt(match.start() - 1));
+        boolean endsWord = match.end() == text.length() || !isAsciiLetter(text.charAt(match.end()));
+        return startsWord && endsWord;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static AhoCorasickMatcher<String> loadDestinations() {
+        Map<String, String> aliases = new HashMap<>();
+        try (InputStream inputStream = TravelRequestNormalizer.class.getClassLoader()
+                .getResourceAsStream(DESTINATIONS_RESOURCE)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("缺少目的地别名资源: " + DESTINATIONS_RESOURCE);
+            }
+            for (JsonNode template : new ObjectMapper().readTree(inputStream)) {
+                String destination = template.path("plan").path("destination").asText();
+                for (JsonNode alias : template.path("aliases")) {
+                    aliases.put(normalize(alias.asText()), destination);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载目的地别名失败: " + DESTINATIONS_RESOURCE, e);
+        }
+        return new AhoCorasickMatcher<>(aliases);
+    }
+
+    /**
+     * 解析阿拉伯数字或中文数字（支持到“万”）
+     * @return 解析结果，无法解析时返回null
+     */
+    public static Integer parseNumber(String number) {
+        if (number == null || number.isEmpty()) {
+            return null;
+        }
+        if (Character.isDigit(number.charAt(0))) {
+            try {
+                return Integer.valueOf(number);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        int total = 0;
+        int section = 0;
+        int digit = 0;
+        for (char c : number.toCharArray()) {
+            int value = "零一二三四五六七八九".indexOf(c);
+            if (c == '两') {
+                value = 2;
+            }
+            if (value >= 0) {
+                digit = value;
+                continue;
+            }
+            int unit = switch (c) {
+                case '十' -> 10;
+                case '百' -> 100;
+                case '千' -> 1000;
+                case '万' -> 10000;
+                default -> 0;
+            };
+            if (unit == 10000) {
+                total += (section + digit) * unit;
+                section = 0;
+            } else if (unit > 0) {
+                section += (digit == 0 ? 1 : digit) * unit;
+            }
+            digit = 0;
+        }
+        return total + section + digit;
+    }
+
+    /**
+     * 旅行需求的规范形式
+     * @param destination 已知目的地的名称，未识别时为null
+     * @param duration 天数，未识别时为null
+     * @param budget 预算，未识别时为null
+     * @param residual 其余需求内容
+     */
+    public record CanonicalRequest(String destination, Integer duration, Integer budget, String residual) {
+
+        /**
+         * 用作缓存或去重的键
+         */
+        public String key() {
+            return (destination == null ? "" : destination) + "|"
+                    + (duration == null ? "" : duration) + "|"
+                    + (budget == null ? "" : budget) + "|"
+                    + residual;
+        }
+
+        /**
+         * 是否为同一趟行程：目的地与天数均已识别且相同，预算相同（都未给出也视为相同）
+         */
+        public boolean sameTrip(CanonicalRequest other) {
+            return destination != null && duration != null
+                    && destination.equals(other.destination)
+                    && duration.equals(other.duration)
+                    && Objects.equals(budget, other.budget);
+        }
+    }
+}
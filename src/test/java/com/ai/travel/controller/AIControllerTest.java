@@ -0,0 +1,240 @@
+package com.ai.travel.controller;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import com.ai.travel.security.JwtUtils;
+import com.ai.travel.service.ExpenseService;
+import com.ai.travel.service.PlanPayloadCache;
+import com.ai.travel.service.TravelPlanService;
+import com.ai.travel.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class AIControllerTest {
+
+    private static final String TOKEN = "Bearer token";
+
+    private static final String PLAN_ETAG = "plan-7-2-1";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path spillDirectory;
+
+    @Mock
+    private TravelPlanService travelPlanService;
+
+    @Mock
+    private ExpenseService expenseService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private JwtUtils jwtUtils;
+
+    @InjectMocks
+    private AIController aiController;
+
+    private MockMvc mockMvc;
+
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(aiController, "planPayloadCache", new PlanPayloadCache(objectMapper, true,
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(1), spillDirectory.toString(), new SimpleMeterRegistry()));
+        mockMvc = MockMvcBuilders.standaloneSetup(aiController).build();
+        lenient().when(jwtUtils.getUserNameFromJwtToken("token")).thenReturn("alice");
+        lenient().when(jwtUtils.validateJwtToken("token")).thenReturn(true);
+        lenient().when(userService.findByUsername("alice")).thenReturn(user);
+    }
+
+    @Test
+    void planIsServedPreCompressedWhenGzipAccepted() throws Exception {
+        storedPlan();
+
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mockMvc.perform(get("/ai/plan/7")
+                            .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andExpect(header().string(HttpHeaders.ETAG, "\"" + PLAN_ETAG + "-gzip\""))
+                    .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT_ENCODING)))
+                    .andReturn();
+
+            JsonNode body = objectMapper.readTree(new GZIPInputStream(
+                    new ByteArrayInputStream(result.getResponse().getContentAsByteArray())));
+            assertThat(body.at("/data/planData/destination").asText()).isEqualTo("杭州");
+        }
+
+        // 第二次请求命中预压缩缓存，不再加载计划
+        verify(travelPlanService, times(1)).getTravelPlanById(7L, user);
+    }
+
+    @Test
+    void planIsServedUncompressedWithItsOwnETag() throws Exception {
+        storedPlan();
+
+        mockMvc.perform(get("/ai/plan/7").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + PLAN_ETAG + "\""))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT_ENCODING)))
+                .andExpect(jsonPath("$.data.planData.destination").value("杭州"));
+    }
+
+    @Test
+    void unchangedPlanReturnsNotModifiedWithoutLoading() throws Exception {
+        when(travelPlanService.getTravelPlanETag(7L, user)).thenReturn(Optional.of(PLAN_ETAG));
+
+        mockMvc.perform(get("/ai/plan/7")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + PLAN_ETAG + "-gzip\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + PLAN_ETAG + "-gzip\""))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT_ENCODING)));
+
+        verify(travelPlanService, never()).getTravelPlanById(any(), any());
+    }
+
+    @Test
+    void weakETagInIfNoneMatchListIsMatched() throws Exception {
+        when(travelPlanService.getTravelPlanETag(7L, user)).thenReturn(Optional.of(PLAN_ETAG));
+
+        mockMvc.perform(get("/ai/plan/7")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"plan-7-1-0\", W/\"" + PLAN_ETAG + "\""))
+                .andExpect(status().isNotModified());
+
+        verify(travelPlanService, never()).getTravelPlanById(any(), any());
+    }
+
+    @Test
+    void compressedETagDoesNotMatchUncompressedRequest() throws Exception {
+        storedPlan();
+
+        mockMvc.perform(get("/ai/plan/7")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + PLAN_ETAG + "-gzip\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + PLAN_ETAG + "\""));
+    }
+
+    @Test
+    void planChangedBetweenQueriesIsServedWithLoadedVersion() throws Exception {
+        TravelPlan plan = storedPlan();
+        when(travelPlanService.getTravelPlanETag(7L, user)).thenReturn(Optional.of("plan-7-1-0"));
+
+        mockMvc.perform(get("/ai/plan/7")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().stringValues(HttpHeaders.ETAG, "\"" + PLAN_ETAG + "-gzip\""));
+
+        verify(travelPlanService).hasETag(plan, "plan-7-1-0");
+    }
+
+    @Test
+    void expensesByDayCarryETag() throws Exception {
+        when(expenseService.getExpensesETagByDay(user, 3L, 1)).thenReturn(Optional.of("expenses-3-1-5"));
+        when(expenseService.getExpensesByTravelPlanAndDay(user, 3L, 1)).thenReturn(List.of());
+
+        MvcResult result = mockMvc.perform(get("/ai/expense/3/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andReturn();
+
+        assertThat(result.getResponse().getHeaders(HttpHeaders.ETAG)).containsExactly("\"expenses-3-1-5\"");
+    }
+
+    @Test
+    void unchangedExpensesByDayReturnNotModifiedWithoutLoading() throws Exception {
+        when(expenseService.getExpensesETagByDay(user, 3L, 1)).thenReturn(Optional.of("expenses-3-1-5"));
+
+        mockMvc.perform(get("/ai/expense/3/1")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"expenses-3-1-5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"expenses-3-1-5\""))
+                .andExpect(content().string(""));
+
+        verify(expenseService, never()).getExpensesByTravelPlanAndDay(any(), any(), any());
+    }
+
+    @Test
+    void changedTotalExpenseIsReturnedWithNewETag() throws Exception {
+        when(expenseService.getExpensesETag(user, 3L)).thenReturn(Optional.of("expenses-3-6"));
+        when(expenseService.getTotalExpenseByTravelPlan(user, 3L)).thenReturn(new BigDecimal("120.50"));
+
+        mockMvc.perform(get("/ai/expense/total/3")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"expenses-3-5\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"expenses-3-6\""))
+                .andExpect(jsonPath("$.data").value(120.50));
+    }
+
+    @Test
+    void unchangedTotalExpenseReturnsNotModified() throws Exception {
+        when(expenseService.getExpensesETag(user, 3L)).thenReturn(Optional.of("expenses-3-6"));
+
+        mockMvc.perform(get("/ai/expense/total/3")
+                        .header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"expenses-3-6\""))
+                .andExpect(status().isNotModified());
+
+        verify(expenseService, never()).getTotalExpenseByTravelPlan(any(), any());
+    }
+
+    private TravelPlan storedPlan() {
+        TravelPlan plan = new TravelPlan();
+        plan.setId(7L);
+        plan.setDestination("杭州");
+        plan.setPlanData("{\"destination\":\"杭州\",\"days\":[]}");
+        lenient().when(travelPlanService.getTravelPlanETag(7L, user)).thenReturn(Optional.of(PLAN_ETAG));
+        lenient().when(travelPlanService.getTravelPlanById(7L, user)).thenReturn(Optional.of(plan));
+        lenient().when(travelPlanService.getETag(plan)).thenReturn(PLAN_ETAG);
+        lenient().when(travelPlanService.hasETag(plan, PLAN_ETAG)).thenReturn(true);
+        return plan;
+    }
+}
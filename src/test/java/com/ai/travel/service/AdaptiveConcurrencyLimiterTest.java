@@ -0,0 +1,155 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.AiServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final int MAX_TOKENS = 800;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueueSize, Duration queueTimeout) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, 1, 100, 0.5, 2.0, maxQueueSize, queueTimeout,
+                meterRegistry);
+    }
+
+    @Test
+    void rejectsImmediatelyWhenQueueIsFull() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 0, Duration.ofSeconds(1));
+        limiter.acquire(MAX_TOKENS);
+
+        assertThatThrownBy(() -> limiter.acquire(MAX_TOKENS)).isInstanceOf(AiServiceOverloadedException.class);
+        assertThat(meterRegistry.counter("doubao.limiter.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsAfterQueueTimeout() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofMillis(50));
+        limiter.acquire(MAX_TOKENS);
+
+        assertThatThrownBy(() -> limiter.acquire(MAX_TOKENS)).isInstanceOf(AiServiceOverloadedException.class);
+        assertThat(limiter.getWaiting()).isZero();
+    }
+
+    @Test
+    void queuedCallerProceedsWhenPermitIsReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(MAX_TOKENS);
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(() -> limiter.acquire(MAX_TOKENS));
+        while (limiter.getWaiting() == 0) {
+            Thread.sleep(5);
+        }
+        first.release(true);
+
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void releaseWithoutCallDoesNotAdjustLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+
+        limiter.acquire(MAX_TOKENS).release(false);
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void failedCallShrinksLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(MAX_TOKENS);
+
+        assertThatThrownBy(() -> permit.track(() -> {
+            throw new IllegalStateException("boom");
+        }).get()).isInstanceOf(IllegalStateException.class);
+        permit.release(false);
+
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void permitIsHeldUntilRunningCallEnds() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(MAX_TOKENS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(permit.track(() -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 调用方超时放弃，实际调用仍在进行
+        permit.release(false);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+
+        finish.countDown();
+        call.get(5, TimeUnit.SECONDS);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void longerCallForMoreTokensDoesNotShrinkLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+        completeAfter(limiter, 800, 20);
+
+        // 耗时是短调用的5倍，但每token耗时相同
+        completeAfter(limiter, 4000, 100);
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void slowerCallForSameTokensShrinksLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+        completeAfter(limiter, 800, 20);
+
+        completeAfter(limiter, 800, 100);
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void releasedPermitRejectsNewCalls() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 0, Duration.ofSeconds(1));
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(MAX_TOKENS);
+        permit.release(true);
+        permit.release(true);
+
+        assertThatThrownBy(() -> permit.track(() -> "late").get()).isInstanceOf(IllegalStateException.class);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static void completeAfter(AdaptiveConcurrencyLimiter limiter, int maxTokens, long millis) {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(maxTokens);
+        permit.track(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }).get();
+        permit.release(true);
+    }
+}
@@ -0,0 +1,212 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.AiServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DoubaoCallGuardTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(100);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ThreadPoolTaskExecutor executor;
+
+    private DoubaoCallGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.initialize();
+        // 窗口4次，至少2次后判断，失败率达到一半即打开
+        guard = new DoubaoCallGuard(executor, Duration.ofMillis(200), Duration.ofSeconds(1), 4, 2, 0.5,
+                Duration.ofSeconds(30), 0.8, OPEN_DURATION, false, 20, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void returnsResultOfSuccessfulCall() {
+        assertThat(guard.call(() -> "plan")).isEqualTo("plan");
+        assertThat(guard.stream(() -> "streamed")).isEqualTo("streamed");
+        assertThat(meterRegistry.counter("doubao.calls", "outcome", "success").count()).isEqualTo(2);
+    }
+
+    @Test
+    void wrapsCallFailure() {
+        assertThatThrownBy(() -> guard.call(() -> {
+            throw new IllegalStateException("boom");
+        }))
+                .isInstanceOf(AiServiceUnavailableException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void opensAfterFailureRateThresholdAndRejectsWithoutCalling() {
+        failOnce();
+        failOnce();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> guard.call(calls::incrementAndGet))
+                .isInstanceOf(AiServiceUnavailableException.class)
+                .hasMessageContaining("熔断中");
+        assertThat(calls).hasValue(0);
+        assertThat(breakerState()).isEqualTo(1);
+    }
+
+    @Test
+    void closesAfterSuccessfulTrialInHalfOpenState() throws InterruptedException {
+        failOnce();
+        failOnce();
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+        assertThat(breakerState()).isEqualTo(2);
+        assertThat(guard.call(() -> "trial")).isEqualTo("trial");
+        assertThat(breakerState()).isZero();
+    }
+
+    @Test
+    void reopensAfterFailedTrial() throws InterruptedException {
+        failOnce();
+        failOnce();
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+        failOnce();
+
+        assertThat(breakerState()).isEqualTo(1);
+    }
+
+    @Test
+    void interruptsCallPastDeadline() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        assertThatThrownBy(() -> guard.call(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        }))
+                .isInstanceOf(AiServiceUnavailableException.class)
+                .hasMessage("调用豆包API超时");
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.counter("doubao.calls", "outcome", "timeout").count()).isEqualTo(1);
+    }
+
+    @Test
+    void deadlineClosesBlockedHttpReadOnVirtualThread() throws Exception {
+        ThreadPoolTaskExecutor virtualExecutor = new ThreadPoolTaskExecutor();
+        virtualExecutor.setCorePoolSize(2);
+        virtualExecutor.setMaxPoolSize(2);
+        virtualExecutor.setVirtualThreads(true);
+        virtualExecutor.initialize();
+        DoubaoCallGuard virtualGuard = new DoubaoCallGuard(virtualExecutor, Duration.ofMillis(200),
+                Duration.ofSeconds(1), 4, 2, 0.5, Duration.ofSeconds(30), 0.8, OPEN_DURATION, false, 20,
+                new SimpleMeterRegistry());
+        // 不设读超时，只有中断能结束读取
+        OkHttpClient client = new OkHttpClient.Builder().readTimeout(Duration.ZERO).build();
+        CountDownLatch callEnded = new CountDownLatch(1);
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            // 接收请求后不响应，直到客户端关闭连接
+            CompletableFuture<Boolean> closedByClient = CompletableFuture.supplyAsync(() -> {
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(5_000);
+                    InputStream input = socket.getInputStream();
+                    while (input.read() >= 0) {
+                        // 丢弃请求内容
+                    }
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            });
+            Request request = new Request.Builder().url("http://127.0.0.1:" + server.getLocalPort()).build();
+
+            assertThatThrownBy(() -> virtualGuard.call(() -> {
+                try (Response response = client.newCall(request).execute()) {
+                    return response.code();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    callEnded.countDown();
+                }
+            }))
+                    .isInstanceOf(AiServiceUnavailableException.class)
+                    .hasMessage("调用豆包API超时");
+            assertThat(callEnded.await(2, TimeUnit.SECONDS)).isTrue();
+            assertThat(closedByClient.get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            virtualExecutor.shutdown();
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    @Test
+    void streamUsesItsOwnDeadline() {
+        assertThat(guard.stream(() -> sleepAndReturn(400, "streamed"))).isEqualTo("streamed");
+    }
+
+    @Test
+    void streamDurationDoesNotCountAsSlowCall() {
+        // 慢调用阈值50ms，至少2次后判断，慢调用率达到一半即打开
+        DoubaoCallGuard slowGuard = new DoubaoCallGuard(executor, Duration.ofMillis(500), Duration.ofSeconds(1),
+                4, 2, 0.5, Duration.ofMillis(50), 0.5, OPEN_DURATION, false, 20, new SimpleMeterRegistry());
+
+        slowGuard.stream(() -> sleepAndReturn(100, "streamed"));
+        slowGuard.stream(() -> sleepAndReturn(100, "streamed"));
+        assertThat(slowGuard.call(() -> "plan")).isEqualTo("plan");
+
+        slowGuard.call(() -> sleepAndReturn(100, "plan"));
+        slowGuard.call(() -> sleepAndReturn(100, "plan"));
+        assertThatThrownBy(() -> slowGuard.call(() -> "plan"))
+                .isInstanceOf(AiServiceUnavailableException.class)
+                .hasMessageContaining("熔断中");
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    private void failOnce() {
+        assertThatThrownBy(() -> guard.call(() -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(AiServiceUnavailableException.class);
+    }
+
+    private double breakerState() {
+        return meterRegistry.get("doubao.breaker.state").gauge().value();
+    }
+}
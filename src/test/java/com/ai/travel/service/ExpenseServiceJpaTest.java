@@ -0,0 +1,129 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.Expense;
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import com.ai.travel.repository.ExpenseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 在MySQL兼容模式的H2上执行批量插入、汇总累加与序列对齐的原生SQL
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:expenses;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "expense.batch.max-size=3"
+})
+@Import({ExpenseService.class, ExpenseIdSequenceAligner.class})
+class ExpenseServiceJpaTest {
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseIdSequenceAligner expenseIdSequenceAligner;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    private TravelPlan travelPlan;
+
+    @BeforeEach
+    void setUp() {
+        user = entityManager.persist(new User("alice", "alice@example.com", "secret"));
+        travelPlan = entityManager.persist(new TravelPlan(user, "杭州", 2, null, "杭州两天", "{}"));
+        entityManager.flush();
+    }
+
+    @Test
+    void bulkInsertWritesExpensesAndRollupsTogether() {
+        List<Expense> expenses = expenseService.addExpenses(user, travelPlan.getId(), List.of(
+                new ExpenseService.NewExpense(1, "早餐", new BigDecimal("30"), "餐饮"),
+                new ExpenseService.NewExpense(1, "门票", new BigDecimal("80"), "门票"),
+                new ExpenseService.NewExpense(2, "午餐", new BigDecimal("45.5"), "餐饮")));
+        entityManager.flush();
+
+        assertThat(expenses).extracting(Expense::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(expenseService.getTotalExpenseByTravelPlan(user, travelPlan.getId())).isEqualByComparingTo("155.5");
+        assertThat(expenseService.getTotalExpenseByDay(user, travelPlan.getId(), 1)).isEqualByComparingTo("110");
+
+        Map<String, Object> breakdown = expenseService.getExpenseBreakdown(user, travelPlan.getId());
+        assertThat(breakdown).containsEntry("count", 3L);
+        assertThat(breakdown.get("categories")).asList().hasSize(2);
+    }
+
+    @Test
+    void bulkInsertChangesTheExpenseETag() {
+        String before = expenseService.getExpensesETag(user, travelPlan.getId()).orElseThrow();
+
+        expenseService.addExpenses(user, travelPlan.getId(),
+                List.of(new ExpenseService.NewExpense(1, "早餐", new BigDecimal("30"), null)));
+        entityManager.flush();
+
+        assertThat(expenseService.getExpensesETag(user, travelPlan.getId())).get().isNotEqualTo(before);
+    }
+
+    @Test
+    void rejectsOversizedOrInvalidBatchWithoutWriting() {
+        ExpenseService.NewExpense valid = new ExpenseService.NewExpense(1, "早餐", BigDecimal.TEN, null);
+
+        assertThatThrownBy(() -> expenseService.addExpenses(user, travelPlan.getId(),
+                List.of(valid, valid, valid, valid)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("单次最多添加3条消费记录");
+        assertThatThrownBy(() -> expenseService.addExpenses(user, travelPlan.getId(),
+                List.of(valid, new ExpenseService.NewExpense(0, "早餐", BigDecimal.TEN, null))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("天数必须大于0");
+        assertThat(expenseRepository.count()).isZero();
+    }
+
+    @Test
+    void alignerMovesSequencePastLegacyIdsAndNeverBack() {
+        jdbcTemplate.update("INSERT INTO expenses (id, travel_plan_id, day_number, item, amount, category) "
+                + "VALUES (5000, ?, 1, '旧记录', 10, '其他')", travelPlan.getId());
+
+        expenseIdSequenceAligner.align();
+        long aligned = nextSequenceValue();
+        assertThat(aligned).isGreaterThan(5000L + Expense.ID_ALLOCATION_SIZE);
+
+        // 再次执行或旧记录被删除后都不会回退
+        expenseIdSequenceAligner.align();
+        jdbcTemplate.update("DELETE FROM expenses WHERE id = 5000");
+        expenseIdSequenceAligner.align();
+        assertThat(nextSequenceValue()).isEqualTo(aligned);
+    }
+
+    private long nextSequenceValue() {
+        return jdbcTemplate.queryForObject("SELECT next_val FROM expenses_seq", Long.class);
+    }
+}
@@ -0,0 +1,68 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.Expense;
+import com.ai.travel.entity.ExpenseRollup;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpenseServiceTest {
+
+    @Test
+    void eachExpenseCountsTowardsFourRollupRows() {
+        List<ExpenseService.RollupDelta> deltas = ExpenseService.rollupDeltas(
+                List.of(expense(2, "100", "餐饮")), false);
+
+        assertThat(deltas).containsExactlyInAnyOrder(
+                delta(2, "餐饮", "100", 1),
+                delta(2, ExpenseRollup.ALL_CATEGORIES, "100", 1),
+                delta(ExpenseRollup.ALL_DAYS, "餐饮", "100", 1),
+                delta(ExpenseRollup.ALL_DAYS, ExpenseRollup.ALL_CATEGORIES, "100", 1));
+    }
+
+    @Test
+    void mergesDeltasForTheSameRow() {
+        List<ExpenseService.RollupDelta> deltas = ExpenseService.rollupDeltas(List.of(
+                expense(1, "30", "交通"),
+                expense(1, "20.5", "交通"),
+                expense(2, "50", null)), false);
+
+        assertThat(deltas).hasSize(7).contains(
+                delta(1, "交通", "50.5", 2),
+                delta(1, ExpenseRollup.ALL_CATEGORIES, "50.5", 2),
+                delta(2, ExpenseService.DEFAULT_CATEGORY, "50", 1),
+                delta(ExpenseRollup.ALL_DAYS, "交通", "50.5", 2),
+                delta(ExpenseRollup.ALL_DAYS, ExpenseRollup.ALL_CATEGORIES, "100.5", 3));
+    }
+
+    @Test
+    void removalNegatesAmountsAndCounts() {
+        List<ExpenseService.RollupDelta> deltas = ExpenseService.rollupDeltas(
+                List.of(expense(3, "80", "门票")), true);
+
+        assertThat(deltas).contains(
+                delta(3, "门票", "-80", -1),
+                delta(ExpenseRollup.ALL_DAYS, ExpenseRollup.ALL_CATEGORIES, "-80", -1));
+    }
+
+    @Test
+    void legacyExpensesWithoutValidDayOnlyCountTowardsWholePlan() {
+        List<ExpenseService.RollupDelta> deltas = ExpenseService.rollupDeltas(
+                List.of(expense(0, "10", "其他"), expense(null, "5", "其他")), false);
+
+        assertThat(deltas).containsExactlyInAnyOrder(
+                delta(ExpenseRollup.ALL_DAYS, "其他", "15", 2),
+                delta(ExpenseRollup.ALL_DAYS, ExpenseRollup.ALL_CATEGORIES, "15", 2));
+    }
+
+    private static Expense expense(Integer dayNumber, String amount, String category) {
+        return new Expense(null, dayNumber, "item", new BigDecimal(amount), category);
+    }
+
+    private static ExpenseService.RollupDelta delta(Integer dayNumber, String category, String amount, long count) {
+        return new ExpenseService.RollupDelta(dayNumber, category, new BigDecimal(amount), count);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.TravelPlanRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class NearDuplicatePlanIndexTest {
+
+    private static final String REQUEST = "北京三天游，预算3000，想看故宫和长城";
+
+    private NearDuplicatePlanIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NearDuplicatePlanIndex(mock(TravelPlanRepository.class), 16, 4, 0.8, 0, 1000,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void findsDifferentlyPhrasedRequestWithSameCanonicalForm() {
+        index.add(1L, REQUEST);
+
+        assertThat(index.findNearDuplicate("三天北京旅行 预算三千 想看故宫和长城")).contains(1L);
+    }
+
+    @Test
+    void requiresSimilarityAboveThreshold() {
+        index.add(1L, REQUEST);
+
+        // 其余内容的Jaccard系数为6/8，低于0.8
+        assertThat(index.findNearDuplicate("北京三天游，预算3000，想看故宫和长城夜景")).isEmpty();
+    }
+
+    @Test
+    void requiresExactDestinationDurationAndBudget() {
+        index.add(1L, REQUEST);
+
+        assertThat(index.findNearDuplicate("北京三天游，预算5000，想看故宫和长城")).isEmpty();
+        assertThat(index.findNearDuplicate("北京四天游，预算3000，想看故宫和长城")).isEmpty();
+        assertThat(index.findNearDuplicate("上海三天游，预算3000，想看故宫和长城")).isEmpty();
+    }
+
+    @Test
+    void ignoresRequestsWithoutDuration() {
+        index.add(1L, "北京旅行，想看故宫和长城");
+
+        assertThat(index.findNearDuplicate("北京旅行，想看故宫和长城")).isEmpty();
+        assertThat(NearDuplicatePlanIndex.features("北京旅行，想看故宫和长城")).isNull();
+    }
+
+    @Test
+    void removedPlansAreNoLongerFound() {
+        index.add(1L, REQUEST);
+        index.remove(1L);
+
+        assertThat(index.findNearDuplicate(REQUEST)).isEmpty();
+    }
+
+    @Test
+    void readdingPlanReplacesItsEntry() {
+        index.add(1L, REQUEST);
+        index.add(1L, "上海三天游，预算3000，想看外滩");
+
+        assertThat(index.findNearDuplicate(REQUEST)).isEmpty();
+        assertThat(index.findNearDuplicate("上海三天游，预算3000，想看外滩")).contains(1L);
+    }
+
+    @Test
+    void jaccardOfShingleSets() {
+        assertThat(NearDuplicatePlanIndex.jaccard(Set.of("ab", "bc"), Set.of("ab", "bc"))).isEqualTo(1.0);
+        assertThat(NearDuplicatePlanIndex.jaccard(Set.of("ab", "bc"), Set.of("bc", "cd"))).isEqualTo(1.0 / 3);
+        assertThat(NearDuplicatePlanIndex.jaccard(Set.of(), Set.of())).isEqualTo(1.0);
+        assertThat(NearDuplicatePlanIndex.jaccard(Set.of("ab"), Set.of())).isEqualTo(0.0);
+    }
+}
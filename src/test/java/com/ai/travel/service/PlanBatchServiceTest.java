@@ -0,0 +1,115 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PlanBatchServiceTest {
+
+    @Mock
+    private TravelPlanService travelPlanService;
+
+    @Spy
+    private ThreadPoolTaskExecutor planBatchExecutor = new ThreadPoolTaskExecutor();
+
+    @InjectMocks
+    private PlanBatchService planBatchService;
+
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        planBatchExecutor.setCorePoolSize(2);
+        planBatchExecutor.setMaxPoolSize(2);
+        planBatchExecutor.setQueueCapacity(0);
+        planBatchExecutor.initialize();
+        ReflectionTestUtils.setField(planBatchService, "parallelism", 2);
+        ReflectionTestUtils.setField(planBatchService, "maxSize", 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        planBatchExecutor.shutdown();
+    }
+
+    @Test
+    void reportsEachItemBeforeSavingAllInOrder() throws Exception {
+        TravelPlan beijing = plan("北京三天");
+        TravelPlan shanghai = plan("上海两天");
+        when(travelPlanService.prepareTravelPlan(user, "北京三天", false)).thenReturn(beijing);
+        when(travelPlanService.prepareTravelPlan(user, "上海两天", false)).thenReturn(shanghai);
+        when(travelPlanService.prepareTravelPlan(user, "失败", false)).thenThrow(new IllegalStateException("boom"));
+        PlanBatchService.Listener listener = mock(PlanBatchService.Listener.class);
+
+        List<TravelPlan> travelPlans = planBatchService
+                .startBatch(user, List.of("北京三天", "失败", "上海两天"), listener)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(travelPlans).containsExactly(beijing, null, shanghai);
+        verify(listener).onItemFailed(eq(1), any(IllegalStateException.class));
+        InOrder order = inOrder(listener, travelPlanService);
+        order.verify(listener).onItem(0, beijing);
+        order.verify(travelPlanService).saveTravelPlans(anyList());
+        verify(listener).onItem(2, shanghai);
+        verify(travelPlanService).saveTravelPlans(List.of(beijing, shanghai));
+    }
+
+    @Test
+    void rejectsBatchWhenExecutorIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            planBatchExecutor.execute(() -> {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertThat(busy.await(5, TimeUnit.SECONDS)).isTrue();
+
+        try {
+            assertThatThrownBy(() -> planBatchService.startBatch(user, List.of("北京三天"),
+                    mock(PlanBatchService.Listener.class)))
+                    .isInstanceOf(TaskRejectedException.class);
+            verify(travelPlanService, never()).prepareTravelPlan(any(), any(), eq(false));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private TravelPlan plan(String travelRequest) {
+        TravelPlan travelPlan = new TravelPlan();
+        travelPlan.setTravelRequest(travelRequest);
+        return travelPlan;
+    }
+}
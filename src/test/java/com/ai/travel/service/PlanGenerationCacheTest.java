@@ -0,0 +1,61 @@
+package com.ai.travel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanGenerationCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PlanGenerationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PlanGenerationCache(100, Duration.ofHours(12), meterRegistry);
+    }
+
+    @Test
+    void equivalentPhrasingsShareTheCachedPlan() {
+        cache.put("北京三天游，预算3000", "{\"destination\":\"北京\"}");
+
+        assertThat(cache.get("三天北京旅行 预算三千")).isEqualTo("{\"destination\":\"北京\"}");
+        assertThat(cache.get("帮我规划一下北京3天旅行，预算3000元")).isEqualTo("{\"destination\":\"北京\"}");
+    }
+
+    @Test
+    void differentTripsMiss() {
+        cache.put("北京三天游，预算3000", "{\"destination\":\"北京\"}");
+
+        assertThat(cache.get("北京五天游，预算3000")).isNull();
+        assertThat(cache.get("北京三天游，预算8000")).isNull();
+        assertThat(cache.get("上海三天游，预算3000")).isNull();
+        // 其他要求不同也不共享
+        assertThat(cache.get("北京三天游，预算3000，想看升旗")).isNull();
+    }
+
+    @Test
+    void laterPutReplacesThePlan() {
+        cache.put("北京三天游", "old");
+        cache.put("北京3天游", "new");
+
+        assertThat(cache.get("北京三天游")).isEqualTo("new");
+    }
+
+    @Test
+    void recordsHitsAndMisses() {
+        cache.put("北京三天游", "{}");
+        cache.get("北京三天游");
+        cache.get("上海三天游");
+
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "plan.generation", "result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "plan.generation", "result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+}
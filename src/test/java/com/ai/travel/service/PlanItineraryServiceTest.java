@@ -0,0 +1,147 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.PlanActivity;
+import com.ai.travel.entity.PlanDay;
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.repository.PlanActivityRepository;
+import com.ai.travel.repository.PlanDayRepository;
+import com.ai.travel.repository.TravelPlanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PlanItineraryServiceTest {
+
+    private static final String PLAN = "{\"destination\":\"杭州\",\"days\":["
+            + "{\"day\":1,\"date\":\"2026-10-01\",\"title\":\"西湖\",\"activities\":["
+            + "{\"name\":\"断桥\",\"time\":\"09:00\",\"budget\":\"12.345\"},{\"name\":\"灵隐寺\",\"budget\":75}]},"
+            + "{\"day\":1,\"title\":\"重复的第一天\"},"
+            + "{\"title\":\"千岛湖\",\"activities\":[]}]}";
+
+    @Mock
+    private TravelPlanRepository travelPlanRepository;
+
+    @Mock
+    private PlanDayRepository planDayRepository;
+
+    @Mock
+    private PlanActivityRepository planActivityRepository;
+
+    @InjectMocks
+    private PlanItineraryService planItineraryService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(travelPlanRepository.save(any(TravelPlan.class))).thenAnswer(invocation -> {
+            TravelPlan travelPlan = invocation.getArgument(0);
+            if (travelPlan.getId() == null) {
+                travelPlan.setId(7L);
+            }
+            return travelPlan;
+        });
+        lenient().when(planDayRepository.save(any(PlanDay.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void newPlanIsMaterializedWithoutDeletingRows() {
+        TravelPlan travelPlan = plan(null, false);
+
+        TravelPlan savedPlan = planItineraryService.saveWithItinerary(travelPlan);
+
+        assertThat(savedPlan.isItineraryMaterialized()).isTrue();
+        verify(planActivityRepository, never()).deleteByTravelPlanId(anyLong());
+        verify(planDayRepository, never()).deleteByTravelPlanId(anyLong());
+
+        // 重复的天数只保留第一次出现的，缺少天数时按位置编号
+        ArgumentCaptor<PlanDay> days = ArgumentCaptor.forClass(PlanDay.class);
+        verify(planDayRepository, times(2)).save(days.capture());
+        assertThat(days.getAllValues()).extracting(PlanDay::getDayNumber).containsExactly(1, 3);
+        assertThat(days.getAllValues().get(0).getTitle()).isEqualTo("西湖");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void activitiesKeepOrderAndNormalizeBudget() {
+        planItineraryService.saveWithItinerary(plan(null, false));
+
+        ArgumentCaptor<List<PlanActivity>> activities = ArgumentCaptor.forClass(List.class);
+        verify(planActivityRepository, times(2)).saveAll(activities.capture());
+        List<PlanActivity> firstDay = activities.getAllValues().get(0);
+        assertThat(firstDay).extracting(PlanActivity::getPosition).containsExactly(0, 1);
+        assertThat(firstDay).extracting(PlanActivity::getName).containsExactly("断桥", "灵隐寺");
+        assertThat(firstDay.get(0).getBudget()).isEqualByComparingTo("12.35");
+        assertThat(firstDay.get(1).getTime()).isNull();
+    }
+
+    @Test
+    void materializedPlanIsRebuiltAfterDeletingOldRows() {
+        planItineraryService.saveWithItinerary(plan(5L, true));
+
+        verify(planActivityRepository).deleteByTravelPlanId(5L);
+        verify(planDayRepository).deleteByTravelPlanId(5L);
+        verify(planDayRepository, times(2)).save(any(PlanDay.class));
+    }
+
+    @Test
+    void batchSaveOnlyDeletesRowsOfMaterializedPlans() {
+        when(travelPlanRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        planItineraryService.saveAllWithItinerary(List.of(plan(null, false), plan(5L, true)));
+
+        verify(planDayRepository).deleteByTravelPlanId(5L);
+        verify(planDayRepository, times(1)).deleteByTravelPlanId(anyLong());
+        verify(planDayRepository, times(4)).save(any(PlanDay.class));
+    }
+
+    @Test
+    void legacyPlanIsMaterializedOnFirstDayRead() {
+        TravelPlan legacy = plan(9L, false);
+        PlanDay day = new PlanDay(legacy, 1, "2026-10-01", "西湖");
+        when(planDayRepository.findByTravelPlanIdAndDayNumber(9L, 1))
+                .thenReturn(Optional.empty(), Optional.of(day));
+        when(travelPlanRepository.findItineraryMaterializedById(9L)).thenReturn(Optional.empty());
+        when(travelPlanRepository.findByIdForUpdate(9L)).thenReturn(Optional.of(legacy));
+        when(planActivityRepository.findByPlanDayOrderByPositionAsc(day)).thenReturn(List.of());
+
+        Optional<Map<String, Object>> dayInfo = planItineraryService.getDay(9L, 1);
+
+        assertThat(dayInfo).hasValueSatisfying(info -> assertThat(info).containsEntry("title", "西湖"));
+        verify(travelPlanRepository).markItineraryMaterialized(9L);
+        verify(planDayRepository, times(2)).save(any(PlanDay.class));
+    }
+
+    @Test
+    void materializedPlanWithoutTheDayIsNotRebuilt() {
+        when(planDayRepository.findByTravelPlanIdAndDayNumber(9L, 5)).thenReturn(Optional.empty());
+        when(travelPlanRepository.findItineraryMaterializedById(9L)).thenReturn(Optional.of(true));
+
+        assertThat(planItineraryService.getDay(9L, 5)).isEmpty();
+        verify(travelPlanRepository, never()).findByIdForUpdate(anyLong());
+    }
+
+    private TravelPlan plan(Long id, boolean materialized) {
+        TravelPlan travelPlan = new TravelPlan();
+        travelPlan.setId(id);
+        travelPlan.setPlanData(PLAN);
+        travelPlan.setItineraryMaterialized(materialized);
+        return travelPlan;
+    }
+}
@@ -0,0 +1,100 @@
+package com.ai.travel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanJsonRepairerTest {
+
+    private static final String PLAN = "{\"destination\":\"杭州\",\"duration\":1,\"days\":["
+            + "{\"day\":1,\"title\":\"西湖\",\"activities\":[{\"name\":\"断桥\",\"time\":\"09:00\",\"budget\":0}]}]}";
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PlanJsonRepairer repairer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        repairer = new PlanJsonRepairer(meterRegistry);
+    }
+
+    @Test
+    void returnsCleanPlanUntouched() {
+        PlanJsonRepairer.RepairResult result = repairer.repair(PLAN);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.json()).isEqualTo(PLAN);
+        assertThat(result.repairs()).isEmpty();
+        assertThat(result.document().summary().destination()).isEqualTo("杭州");
+        assertThat(meterRegistry.counter("plan.repair.outcome", "result", "clean").count()).isEqualTo(1);
+    }
+
+    @Test
+    void extractsFencedJson() {
+        PlanJsonRepairer.RepairResult result = repairer.repair("好的，以下是行程：\n```json\n" + PLAN + "\n```\n祝旅途愉快");
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.repairs()).containsExactly("extracted_fenced");
+        assertThat(result.document().plan().get("days")).hasSize(1);
+    }
+
+    @Test
+    void closesTruncatedPlanAndDropsIncompleteActivity() {
+        String truncated = "{\"destination\":\"杭州\",\"days\":[{\"day\":1,\"activities\":["
+                + "{\"name\":\"西湖\",\"budget\":\"100元\"},{\"name\":\"灵";
+
+        PlanJsonRepairer.RepairResult result = repairer.repair(truncated);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.repairs()).contains("closed_truncated", "coerced_activity_budget",
+                "dropped_incomplete_activity", "filled_duration");
+        assertThat(result.document().plan().at("/days/0/activities")).hasSize(1);
+        assertThat(result.document().summary().duration()).isEqualTo(1);
+        assertThat(result.document().summary().activitiesBudget()).isEqualByComparingTo("100");
+        assertThat(meterRegistry.counter("plan.repair.outcome", "result", "repaired").count()).isEqualTo(1);
+    }
+
+    @Test
+    void coercesTextualDurationToInteger() {
+        String plan = "{\"destination\":\"杭州\",\"duration\":\"5天\",\"totalBudget\":\"3000元\",\"days\":["
+                + "{\"day\":1.0,\"activities\":[{\"name\":\"断桥\"}]}]}";
+
+        PlanJsonRepairer.RepairResult result = repairer.repair(plan);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.repairs()).contains("coerced_plan_duration", "coerced_plan_totalBudget",
+                "coerced_day_day");
+        assertThat(result.document().plan().get("duration").isInt()).isTrue();
+        assertThat(result.document().plan().at("/days/0/day").isInt()).isTrue();
+        assertThat(result.document().summary().duration()).isEqualTo(5);
+        assertThat(result.document().summary().totalBudget()).isEqualByComparingTo("3000");
+    }
+
+    @Test
+    void acceptsRelaxedSyntax() {
+        PlanJsonRepairer.RepairResult result = repairer.repair(
+                "{destination:'杭州',days:[{day:1,activities:[{name:'断桥',},],},],}");
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.repairs()).contains("relaxed_syntax", "filled_duration");
+    }
+
+    @Test
+    void failsWithoutRequiredFields() {
+        PlanJsonRepairer.RepairResult result = repairer.repair("{\"days\":[{\"day\":1,\"activities\":[]}]}");
+
+        assertThat(result.valid()).isFalse();
+        assertThat(result.error()).isEqualTo("plan.destination缺失");
+        assertThat(result.document()).isNull();
+        assertThat(meterRegistry.counter("plan.repair.outcome", "result", "failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void failsWithoutJson() {
+        assertThat(repairer.repair("抱歉，暂时无法生成").error()).isEqualTo("未找到JSON内容");
+        assertThat(repairer.repair("  ").error()).isEqualTo("AI返回内容为空");
+    }
+}
@@ -0,0 +1,83 @@
+package com.ai.travel.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanPayloadCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path spillDirectory;
+
+    private PlanPayloadCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = cache(true);
+    }
+
+    private PlanPayloadCache cache(boolean enabled) {
+        return new PlanPayloadCache(objectMapper, enabled, DataSize.ofMegabytes(1), DataSize.ofMegabytes(1),
+                spillDirectory.toString(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void negotiatesGzipWhenAccepted() {
+        assertThat(cache.negotiate("gzip")).contains(PlanPayloadCache.GZIP);
+        assertThat(cache.negotiate("br, GZIP;q=0.5")).contains(PlanPayloadCache.GZIP);
+        assertThat(cache.negotiate("deflate, *")).contains(PlanPayloadCache.GZIP);
+    }
+
+    @Test
+    void explicitGzipQualityOverridesWildcard() {
+        assertThat(cache.negotiate("gzip;q=0, *")).isEmpty();
+        assertThat(cache.negotiate("*;q=0")).isEmpty();
+    }
+
+    @Test
+    void doesNotNegotiateWithoutGzip() {
+        assertThat(cache.negotiate(null)).isEmpty();
+        assertThat(cache.negotiate("br, deflate")).isEmpty();
+        assertThat(cache.negotiate("gzip;q=abc")).isEmpty();
+        assertThat(cache(false).negotiate("gzip")).isEmpty();
+    }
+
+    @Test
+    void compressesEachKeyOnce() throws IOException {
+        AtomicInteger serializations = new AtomicInteger();
+
+        byte[] first = cache.get("plan-detail:1", () -> {
+            serializations.incrementAndGet();
+            return Map.of("destination", "北京");
+        });
+        byte[] second = cache.get("plan-detail:1", () -> {
+            serializations.incrementAndGet();
+            return Map.of("destination", "上海");
+        });
+
+        assertThat(second).isSameAs(first);
+        assertThat(serializations).hasValue(1);
+        assertThat(objectMapper.readTree(new GZIPInputStream(new ByteArrayInputStream(first))).get("destination").asText())
+                .isEqualTo("北京");
+    }
+
+    @Test
+    void doesNotCacheMissingBody() {
+        assertThat(cache.get("plan-detail:2", () -> null)).isNull();
+        assertThat(cache.get("plan-detail:2", () -> Map.of("id", 2))).isNotNull();
+    }
+}
@@ -0,0 +1,130 @@
+package com.ai.travel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PlanRequestCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentEquivalentRequestsShareOneCall() throws Exception {
+        PlanRequestCoalescer coalescer = new PlanRequestCoalescer(Duration.ofSeconds(5), meterRegistry);
+
+        Future<String> leader = executor.submit(() -> coalescer.execute("北京三天", blockingGenerator("{\"plan\":1}")));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> follower = executor.submit(() -> coalescer.execute("  北京三天 ", blockingGenerator("{\"plan\":2}")));
+        awaitCount("coalesced", 1);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("{\"plan\":1}");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("{\"plan\":1}");
+        assertThat(calls).hasValue(1);
+        assertThat(count("leader")).isEqualTo(1);
+        assertThat(meterRegistry.get("plan.singleflight.in-flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void differentRequestsAreNotCoalesced() {
+        PlanRequestCoalescer coalescer = new PlanRequestCoalescer(Duration.ofSeconds(5), meterRegistry);
+
+        coalescer.execute("北京三天", () -> "beijing");
+        coalescer.execute("上海三天", () -> "shanghai");
+
+        assertThat(count("leader")).isEqualTo(2);
+        assertThat(count("coalesced")).isZero();
+    }
+
+    @Test
+    void leaderFailureReachesWaitersAndIsNotRemembered() throws Exception {
+        PlanRequestCoalescer coalescer = new PlanRequestCoalescer(Duration.ofSeconds(5), meterRegistry);
+
+        Future<String> leader = executor.submit(() -> coalescer.execute("北京三天", () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("模型不可用");
+        }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> follower = executor.submit(() -> coalescer.execute("北京三天", () -> "unused"));
+        awaitCount("coalesced", 1);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        // 失败后不保留结果，下一次请求重新调用
+        assertThat(coalescer.execute("北京三天", () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    void waiterGivesUpAtTheLeaderDeadline() throws Exception {
+        PlanRequestCoalescer coalescer = new PlanRequestCoalescer(Duration.ofMillis(200), meterRegistry);
+
+        executor.submit(() -> coalescer.execute("北京三天", blockingGenerator("late")));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> coalescer.execute("北京三天", () -> "unused"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("等待相同旅行需求的生成结果超时");
+        assertThat(count("timeout")).isEqualTo(1);
+    }
+
+    private Supplier<String> blockingGenerator(String result) {
+        return () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return result;
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitCount(String result, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count(result) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(count(result)).isEqualTo(expected);
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("plan.singleflight.calls", "result", result).count();
+    }
+}
@@ -0,0 +1,117 @@
+package com.ai.travel.service;
+
+import com.ai.travel.exception.PlanFormatException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PlanStreamParserTest {
+
+    private static final String PLAN = "{\"destination\":\"北京\",\"duration\":2,\"totalBudget\":3000,\"days\":["
+            + "{\"day\":1,\"activities\":[{\"name\":\"故宫\",\"budget\":100},{\"name\":\"景山\",\"budget\":50.5}]},"
+            + "{\"day\":2,\"activities\":[]}]}";
+
+    @Test
+    void parseReadsSummaryInOnePass() {
+        PlanStreamParser.PlanSummary summary = PlanStreamParser.parse("  " + PLAN + "\n");
+
+        assertThat(summary.destination()).isEqualTo("北京");
+        assertThat(summary.duration()).isEqualTo(2);
+        assertThat(summary.totalBudget()).isEqualByComparingTo("3000");
+        assertThat(summary.activitiesBudget()).isEqualByComparingTo(new BigDecimal("150.5"));
+        assertThat(summary.dayCount()).isEqualTo(2);
+    }
+
+    @Test
+    void parseDocumentBuildsTreeAlongsideSummary() {
+        PlanStreamParser.PlanDocument document = PlanStreamParser.parseDocument(PLAN);
+
+        assertThat(document.plan().get("days")).hasSize(2);
+        assertThat(document.plan().get("destination").asText()).isEqualTo("北京");
+        assertThat(document.summary()).isEqualTo(PlanStreamParser.parse(PLAN));
+    }
+
+    @Test
+    void summarizeMatchesTextParse() {
+        PlanStreamParser.PlanDocument document = PlanStreamParser.parseDocument(PLAN);
+
+        assertThat(PlanStreamParser.summarize(document.plan())).isEqualTo(document.summary());
+    }
+
+    @Test
+    void lenientFeedReportsEventsAsChunksArrive() {
+        List<String> events = new ArrayList<>();
+        PlanStreamParser parser = new PlanStreamParser(new PlanStreamParser.Listener() {
+            @Override
+            public void onDestination(String destination) {
+                events.add("destination:" + destination);
+            }
+
+            @Override
+            public void onDuration(int duration) {
+                events.add("duration:" + duration);
+            }
+
+            @Override
+            public void onDay(JsonNode day) {
+                events.add("day:" + day.get("day").asInt());
+            }
+        }, true);
+
+        parser.feed("好的，计划如下：\n```json\n");
+        for (int i = 0; i < PLAN.length(); i += 7) {
+            parser.feed(PLAN.substring(i, Math.min(PLAN.length(), i + 7)));
+        }
+        parser.feed("\n```\n以上是行程");
+
+        assertThat(parser.finish().dayCount()).isEqualTo(2);
+        assertThat(events).containsExactly("destination:北京", "duration:2", "day:1", "day:2");
+    }
+
+    @Test
+    void strictParseRejectsTrailingContent() {
+        assertThatThrownBy(() -> PlanStreamParser.parse(PLAN + " 1"))
+                .isInstanceOf(PlanFormatException.class)
+                .hasMessage("计划JSON之后存在多余内容");
+        assertThatThrownBy(() -> PlanStreamParser.parse(PLAN + "{}"))
+                .isInstanceOf(PlanFormatException.class);
+        assertThatThrownBy(() -> PlanStreamParser.parse(PLAN + "xyz"))
+                .isInstanceOf(PlanFormatException.class);
+    }
+
+    @Test
+    void strictParseRejectsLeadingTextAndNonObjects() {
+        assertThatThrownBy(() -> PlanStreamParser.parse("说明" + PLAN))
+                .isInstanceOf(PlanFormatException.class)
+                .hasMessage("计划必须是JSON对象");
+        assertThatThrownBy(() -> PlanStreamParser.parse("[1]"))
+                .isInstanceOf(PlanFormatException.class)
+                .hasMessage("计划必须是JSON对象");
+        assertThatThrownBy(() -> PlanStreamParser.parse(null))
+                .isInstanceOf(PlanFormatException.class);
+    }
+
+    @Test
+    void rejectsIncompleteDocument() {
+        assertThatThrownBy(() -> PlanStreamParser.parse("{\"destination\":\"北京\""))
+                .isInstanceOf(PlanFormatException.class);
+    }
+
+    @Test
+    void rejectsStructuralViolations() {
+        assertThatThrownBy(() -> PlanStreamParser.parse("{\"destination\":\"北京\",\"days\":{}}"))
+                .hasMessage("days必须是数组");
+        assertThatThrownBy(() -> PlanStreamParser.parse("{\"days\":[1]}"))
+                .hasMessage("days中的元素必须是对象");
+        assertThatThrownBy(() -> PlanStreamParser.parse("{\"destination\":{\"city\":\"北京\"}}"))
+                .hasMessage("destination必须是简单值");
+        assertThatThrownBy(() -> PlanStreamParser.parse("{\"days\":[{\"activities\":{}}]}"))
+                .hasMessage("activities必须是数组");
+    }
+}
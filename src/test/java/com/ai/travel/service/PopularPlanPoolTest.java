@@ -0,0 +1,144 @@
+package com.ai.travel.service;
+
+import com.ai.travel.repository.TravelPlanRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PopularPlanPoolTest {
+
+    private final TravelPlanRepository travelPlanRepository = mock(TravelPlanRepository.class);
+
+    private final AIService aiService = mock(AIService.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+
+        when(travelPlanRepository.findPopularDestinations(any(), any())).thenReturn(List.of(
+                popularity("北京", 3), popularity("上海", 2), popularity("成都", 4)));
+        when(aiService.estimatePlanTokens(anyString())).thenReturn(1000L);
+        when(aiService.generateTravelPlan(anyString(), any(LongAdder.class))).thenAnswer(invocation -> {
+            invocation.getArgument(1, LongAdder.class).add(900);
+            return "{}";
+        });
+        when(aiService.parsePlan(eq("{}"), anyString())).thenAnswer(invocation -> new AIService.ParsedPlan(
+                "{\"destination\":\"" + invocation.getArgument(1, String.class) + "\"}", false, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    private PopularPlanPool pool(long tokenBudget) {
+        return new PopularPlanPool(travelPlanRepository, aiService, executor, true, 20, Duration.ofDays(30),
+                Duration.ofHours(20), tokenBudget, meterRegistry);
+    }
+
+    @Test
+    void startsEmptyWithoutCallingTheModel() {
+        PopularPlanPool pool = pool(10_000);
+
+        assertThat(pool.find("北京三天")).isNull();
+        verify(aiService, never()).generateTravelPlan(anyString(), any(LongAdder.class));
+    }
+
+    @Test
+    void servesSimpleRequestsFromRefreshedPool() {
+        PopularPlanPool pool = pool(10_000);
+        pool.refresh();
+
+        assertThat(pool.find("北京三天")).isEqualTo("{\"destination\":\"北京3天旅行\"}");
+        assertThat(pool.find("帮我规划一下上海2天旅行")).isNotNull();
+        // 带预算或其他要求的需求不使用池中的计划
+        assertThat(pool.find("北京三天，预算3000")).isNull();
+        assertThat(pool.find("北京三天，想看升旗")).isNull();
+        assertThat(pool.find("北京五天")).isNull();
+        assertThat(meterRegistry.counter("plan.pool.requests", "result", "hit").count()).isEqualTo(2);
+    }
+
+    @Test
+    void stopsGeneratingWhenTokenBudgetCannotCoverNextPlan() {
+        PopularPlanPool pool = pool(2_000);
+        pool.refresh();
+
+        // 第一个计划实际用量900，剩余1100仍够估算的1000；第二个之后剩余200不够
+        verify(aiService, times(2)).generateTravelPlan(anyString(), any(LongAdder.class));
+        assertThat(pool.find("成都四天")).isNull();
+        assertThat(meterRegistry.counter("plan.pool.tokens").count()).isEqualTo(1800);
+    }
+
+    @Test
+    void keepsFreshPlansOnNextRefresh() {
+        PopularPlanPool pool = pool(10_000);
+        pool.refresh();
+        pool.refresh();
+
+        verify(aiService, times(3)).generateTravelPlan(anyString(), any(LongAdder.class));
+    }
+
+    @Test
+    void skipsScheduledRefreshWhileOneIsRunning() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        when(aiService.generateTravelPlan(anyString(), any(LongAdder.class))).thenAnswer(invocation -> {
+            started.countDown();
+            finish.await();
+            return "{}";
+        });
+        PopularPlanPool pool = pool(1_000);
+
+        pool.scheduleRefresh();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        pool.scheduleRefresh();
+        finish.countDown();
+
+        verify(travelPlanRepository, times(1)).findPopularDestinations(any(), any());
+    }
+
+    private static TravelPlanRepository.DestinationPopularity popularity(String destination, int duration) {
+        return new TravelPlanRepository.DestinationPopularity() {
+            @Override
+            public String getDestination() {
+                return destination;
+            }
+
+            @Override
+            public Integer getDuration() {
+                return duration;
+            }
+
+            @Override
+            public long getPlanCount() {
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.ai.travel.service;
+
+import com.ai.travel.entity.TravelPlan;
+import com.ai.travel.entity.User;
+import com.ai.travel.repository.TravelPlanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TravelPlanServiceTest {
+
+    @Mock
+    private TravelPlanRepository travelPlanRepository;
+
+    @Mock
+    private SimilarPlanIndex similarPlanIndex;
+
+    @InjectMocks
+    private TravelPlanService travelPlanService;
+
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(travelPlanService, "maxPageSize", 50);
+    }
+
+    @Test
+    void returnsSimilarPlanForSameTrip() {
+        TravelPlan plan = indexedPlan("北京三天游，预算3000，想看故宫");
+
+        assertThat(travelPlanService.findSimilarPlan(user, "北京三天游，预算3000，想看故宫和长城")).contains(plan);
+    }
+
+    @Test
+    void doesNotReturnSimilarPlanWithDifferentDuration() {
+        indexedPlan("北京三天游，预算3000");
+
+        assertThat(travelPlanService.findSimilarPlan(user, "北京五天游，预算3000")).isEmpty();
+    }
+
+    @Test
+    void doesNotReturnSimilarPlanWithDifferentBudget() {
+        indexedPlan("北京三天游，预算3000");
+
+        assertThat(travelPlanService.findSimilarPlan(user, "北京三天游，预算8000")).isEmpty();
+    }
+
+    @Test
+    void firstPageReturnsCursorOfLastRowWhenMoreRemain() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 10, 1, 8, 30, 15, 123_456_000);
+        when(travelPlanRepository.findSummariesByUser(user, PageRequest.of(0, 3)))
+                .thenReturn(summaries(createdAt, 9, 8, 7));
+
+        TravelPlanService.PlanPage page = travelPlanService.getUserTravelPlanPage(user, null, 2);
+
+        assertThat(page.plans()).extracting(TravelPlanRepository.TravelPlanSummary::getId).containsExactly(9L, 8L);
+        assertThat(page.nextCursor()).isNotNull().doesNotContain("=", "+", "/");
+
+        // 下一页从上一页最后一条(createdAt, id)之后继续
+        when(travelPlanRepository.findSummariesByUserAfter(user, createdAt, 8L, PageRequest.of(0, 3)))
+                .thenReturn(summaries(createdAt, 7));
+        TravelPlanService.PlanPage next = travelPlanService.getUserTravelPlanPage(user, page.nextCursor(), 2);
+
+        assertThat(next.plans()).extracting(TravelPlanRepository.TravelPlanSummary::getId).containsExactly(7L);
+        assertThat(next.nextCursor()).isNull();
+    }
+
+    @Test
+    void lastFullPageHasNoCursor() {
+        when(travelPlanRepository.findSummariesByUser(eq(user), any()))
+                .thenReturn(summaries(LocalDateTime.now(), 2, 1));
+
+        assertThat(travelPlanService.getUserTravelPlanPage(user, "", 2).nextCursor()).isNull();
+    }
+
+    @Test
+    void pageSizeIsClampedToLimits() {
+        when(travelPlanRepository.findSummariesByUser(eq(user), any())).thenReturn(List.of());
+
+        travelPlanService.getUserTravelPlanPage(user, null, 500);
+        travelPlanService.getUserTravelPlanPage(user, null, 0);
+
+        verify(travelPlanRepository).findSummariesByUser(user, PageRequest.of(0, 51));
+        verify(travelPlanRepository).findSummariesByUser(user, PageRequest.of(0, 2));
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatThrownBy(() -> travelPlanService.getUserTravelPlanPage(user, "not-a-cursor", 20))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("分页游标无效");
+    }
+
+    private static List<TravelPlanRepository.TravelPlanSummary> summaries(LocalDateTime createdAt, long... ids) {
+        return LongStream.of(ids).<TravelPlanRepository.TravelPlanSummary>mapToObj(id -> summary(id, createdAt)).toList();
+    }
+
+    private static TravelPlanRepository.TravelPlanSummary summary(long id, LocalDateTime createdAt) {
+        return new TravelPlanRepository.TravelPlanSummary() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getDestination() {
+                return "北京";
+            }
+
+            @Override
+            public Integer getDuration() {
+                return 3;
+            }
+
+            @Override
+            public String getTravelRequest() {
+                return "北京三天";
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return createdAt;
+            }
+        };
+    }
+
+    private TravelPlan indexedPlan(String travelRequest) {
+        TravelPlan plan = new TravelPlan();
+        plan.setId(1L);
+        plan.setTravelRequest(travelRequest);
+        when(similarPlanIndex.findMostSimilar(eq(user), anyString())).thenReturn(Optional.of(1L));
+        when(travelPlanRepository.findByIdAndUser(1L, user)).thenReturn(Optional.of(plan));
+        return plan;
+    }
+}
@@ -0,0 +1,41 @@
+package com.ai.travel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class AhoCorasickMatcherTest {
+
+    @Test
+    void findsOverlappingMatchesThroughFailureLinks() {
+        AhoCorasickMatcher<Integer> matcher = new AhoCorasickMatcher<>(Map.of("he", 1, "she", 2, "his", 3, "hers", 4));
+
+        assertThat(matcher.findAll("ushers"))
+                .extracting(AhoCorasickMatcher.Match::pattern, AhoCorasickMatcher.Match::value,
+                        AhoCorasickMatcher.Match::start, AhoCorasickMatcher.Match::end)
+                .containsExactlyInAnyOrder(
+                        tuple("she", 2, 1, 4),
+                        tuple("he", 1, 2, 4),
+                        tuple("hers", 4, 2, 6));
+    }
+
+    @Test
+    void matchesChinesePatternsSharingCharacters() {
+        AhoCorasickMatcher<String> matcher = new AhoCorasickMatcher<>(Map.of("北京", "beijing", "京都", "kyoto"));
+
+        assertThat(matcher.findAll("去北京都可以"))
+                .extracting(AhoCorasickMatcher.Match::value, AhoCorasickMatcher.Match::start)
+                .containsExactly(tuple("beijing", 1), tuple("kyoto", 2));
+    }
+
+    @Test
+    void ignoresEmptyPatternsAndReturnsNothingWithoutMatches() {
+        AhoCorasickMatcher<Integer> matcher = new AhoCorasickMatcher<>(Map.of("", 0, "杭州", 1));
+
+        assertThat(matcher.findAll("去上海")).isEmpty();
+        assertThat(matcher.findAll("")).isEmpty();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ai.travel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressedJsonTest {
+
+    private static final String PLAN = "{\"destination\":\"北京\",\"duration\":1,\"days\":[{\"day\":1,"
+            + "\"activities\":[{\"name\":\"故宫\",\"time\":\"09:00\",\"budget\":60,\"description\":\"参观\"}]}]}";
+
+    @Test
+    void roundTripsThroughStoredBytes() {
+        CompressedJson compressed = CompressedJson.compress(PLAN);
+        CompressedJson restored = CompressedJson.fromBytes(compressed.bytes());
+
+        assertThat(restored.json()).isEqualTo(PLAN);
+        assertThat(restored).isEqualTo(compressed);
+        assertThat(compressed.bytes().length).isLessThan(PLAN.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void roundTripsEmptyDocument() {
+        assertThat(CompressedJson.fromBytes(CompressedJson.compress("").bytes()).json()).isEmpty();
+    }
+
+    @Test
+    void rejectsUnknownDictionaryVersion() {
+        byte[] bytes = CompressedJson.compress(PLAN).bytes().clone();
+        bytes[0] = 9;
+
+        assertThatThrownBy(() -> CompressedJson.fromBytes(bytes).json())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("不支持的压缩数据版本");
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        byte[] bytes = CompressedJson.compress(PLAN).bytes();
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+
+        assertThatThrownBy(() -> CompressedJson.fromBytes(truncated).json())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ai.travel.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TravelRequestNormalizerTest {
+
+    @Test
+    void normalizeFoldsWidthCaseAndWhitespace() {
+        assertThat(TravelRequestNormalizer.normalize("ＨＥＬＬＯ  World ")).isEqualTo("hello world");
+        assertThat(TravelRequestNormalizer.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void canonicalizeExtractsDestinationDurationAndBudget() {
+        TravelRequestNormalizer.CanonicalRequest canonical =
+                TravelRequestNormalizer.canonicalize("帮我规划一下上海5日自由行，预算约5000元左右，想看外滩");
+
+        assertThat(canonical.destination()).isEqualTo("上海");
+        assertThat(canonical.duration()).isEqualTo(5);
+        assertThat(canonical.budget()).isEqualTo(5000);
+        assertThat(canonical.residual()).isEqualTo("想看外滩");
+    }
+
+    @Test
+    void canonicalizeMapsEquivalentPhrasingsToTheSameKey() {
+        String key = TravelRequestNormalizer.canonicalize("北京三天游，预算3000").key();
+
+        assertThat(key).isEqualTo("北京|3|3000|");
+        assertThat(TravelRequestNormalizer.canonicalize("三天北京旅行 预算三千").key()).isEqualTo(key);
+    }
+
+    @Test
+    void canonicalizeDoesNotTakeDatesAsDuration() {
+        assertThat(TravelRequestNormalizer.canonicalize("10月1日出发去上海玩5天").duration()).isEqualTo(5);
+        assertThat(TravelRequestNormalizer.canonicalize("国庆10月1日出发，北京五日游").duration()).isEqualTo(5);
+        assertThat(TravelRequestNormalizer.canonicalize("3号出发，6号回来，去成都").duration()).isNull();
+        assertThat(TravelRequestNormalizer.canonicalize("10月1日到10月3日去杭州").duration()).isNull();
+    }
+
+    @Test
+    void canonicalizeOnlyRecognizesKnownDestinations() {
+        assertThat(TravelRequestNormalizer.canonicalize("带父母北京三天").destination()).isEqualTo("北京");
+        assertThat(TravelRequestNormalizer.canonicalize("魔都两天游").destination()).isEqualTo("上海");
+        assertThat(TravelRequestNormalizer.canonicalize("xi'an 3 days").destination()).isEqualTo("西安");
+
+        TravelRequestNormalizer.CanonicalRequest lhasa = TravelRequestNormalizer.canonicalize("拉萨三天游");
+        assertThat(lhasa.destination()).isNull();
+        assertThat(lhasa.duration()).isEqualTo(3);
+        assertThat(lhasa.key()).isNotEqualTo(TravelRequestNormalizer.canonicalize("大理三天游").key());
+    }
+
+    @Test
+    void canonicalizeLeavesUnrecognizedFieldsEmpty() {
+        TravelRequestNormalizer.CanonicalRequest canonical = TravelRequestNormalizer.canonicalize("ＨＥＬＬＯ  World");
+
+        assertThat(canonical.destination()).isNull();
+        assertThat(canonical.duration()).isNull();
+        assertThat(canonical.budget()).isNull();
+        assertThat(canonical.key()).isEqualTo("|||helloworld");
+    }
+
+    @Test
+    void parseNumberHandlesArabicAndChineseNumerals() {
+        assertThat(TravelRequestNormalizer.parseNumber("3000")).isEqualTo(3000);
+        assertThat(TravelRequestNormalizer.parseNumber("十")).isEqualTo(10);
+        assertThat(TravelRequestNormalizer.parseNumber("十五")).isEqualTo(15);
+        assertThat(TravelRequestNormalizer.parseNumber("二十")).isEqualTo(20);
+        assertThat(TravelRequestNormalizer.parseNumber("一百零五")).isEqualTo(105);
+        assertThat(TravelRequestNormalizer.parseNumber("两万五千")).isEqualTo(25000);
+        assertThat(TravelRequestNormalizer.parseNumber("")).isNull();
+        assertThat(TravelRequestNormalizer.parseNumber("99999999999")).isNull();
+    }
+}